@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2016 iChengc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cc.library;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The math behind the arrows between the selected cells: the direction key that the built arrows are cached by, and
+ * the trigonometry of building an arrow on a cache miss.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArrowAngleBenchmark {
+    private static final int CELL_RADIUS = 60;
+    private static final int STROKE_WIDTH = 4;
+    private static final int INNER_CIRCLE_RADIUS = 18;
+
+    @Param({"3", "6", "10"})
+    public int baseCount;
+
+    private final CellGeometry mGeometry = new CellGeometry();
+    private final float[] mVertices = new float[6];
+    private int mFrom;
+    private int mTo;
+
+    @Setup
+    public void setUp() {
+        mGeometry.layout(baseCount, 0, 0, CELL_RADIUS, 30);
+    }
+
+    /**
+     * Step through all the pairs of the cells.
+     */
+    private void nextMove() {
+        final int cellCount = mGeometry.getCellCount();
+        if (++mTo == cellCount) {
+            mTo = 0;
+            if (++mFrom == cellCount) {
+                mFrom = 0;
+            }
+        }
+    }
+
+    @Benchmark
+    public int directionKey() {
+        nextMove();
+        return mGeometry.getDirectionKey(mFrom, mTo);
+    }
+
+    @Benchmark
+    public float[] arrowVertices() {
+        nextMove();
+        CellGeometry.getArrowVertices(mGeometry.getRow(mTo) - mGeometry.getRow(mFrom),
+                mGeometry.getColumn(mTo) - mGeometry.getColumn(mFrom), CELL_RADIUS, STROKE_WIDTH,
+                INNER_CIRCLE_RADIUS, mVertices);
+        return mVertices;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2016 iChengc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cc.library;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load a {@link PatternBlacklist} of every 4x4 pattern up to the length from its binary form, and match the longest
+ * blacklisted pattern against it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlacklistBenchmark {
+
+    private static final int BASE_COUNT = 4;
+
+    @Param({"3", "4", "5"})
+    public int maxLength;
+
+    private byte[] mData;
+    private PatternBlacklist mBlacklist;
+    private int[] mPattern;
+
+    @Setup
+    public void setUp() throws IOException {
+        PatternBlacklist.Builder builder = new PatternBlacklist.Builder(BASE_COUNT);
+        for (Iterator<int[]> it = new PatternCounter(BASE_COUNT).iterator(1, maxLength); it.hasNext(); ) {
+            final int[] pattern = it.next();
+            builder.add(pattern);
+            mPattern = pattern;
+        }
+        mBlacklist = builder.build();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        mBlacklist.write(out);
+        mData = out.toByteArray();
+    }
+
+    @Benchmark
+    public PatternBlacklist read() throws IOException {
+        return PatternBlacklist.read(new ByteArrayInputStream(mData));
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return mBlacklist.contains(mPattern);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2016 iChengc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cc.library;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Count the patterns of a grid with {@link PatternCounter}, every length on the grids whose states fit and the short
+ * lengths on the larger ones, and walk the short patterns one by one for comparison.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CounterBenchmark {
+
+    /**
+     * The longest pattern that is enumerated, the count of the longer ones explodes on the large grids.
+     */
+    private static final int ENUMERATION_LENGTH = 4;
+
+    @Param({"3", "4", "6", "8"})
+    public int baseCount;
+
+    private PatternCounter mCounter;
+    private int mMaxLength;
+
+    @Setup
+    public void setUp() {
+        mCounter = new PatternCounter(baseCount);
+        // The count of the sparse states grows with the cells of the grid, keep them in the heap.
+        final int cellCount = baseCount * baseCount;
+        mMaxLength = cellCount <= PatternCounter.MAX_DENSE_CELL_COUNT ? cellCount : baseCount <= 6 ? 5 : 4;
+    }
+
+    @Benchmark
+    public long[] countByLength() {
+        return mCounter.countByLength(mMaxLength);
+    }
+
+    @Benchmark
+    public long enumerate() {
+        long count = 0;
+        for (Iterator<int[]> it = mCounter.iterator(1, ENUMERATION_LENGTH); it.hasNext(); it.next()) {
+            count++;
+        }
+        return count;
+    }
+}
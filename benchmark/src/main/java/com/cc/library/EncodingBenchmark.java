@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2016 iChengc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cc.library;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turn a finished pattern into its stored forms: the "0-1-2" string, the binary codec and the rank.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodingBenchmark {
+
+    @Param({"3", "4", "6"})
+    public int baseCount;
+
+    private int[] mCells;
+    private int[] mRankedCells;
+    private SelectedCells mSelectedCells;
+    private byte[] mEncoded;
+
+    @Setup
+    public void setUp() {
+        // A pattern over all the cells, which is the worst case for every form. The step is coprime to the count,
+        // so every cell is visited once.
+        final int cellCount = baseCount * baseCount;
+        mCells = new int[cellCount];
+        for (int i = 0; i < cellCount; i++) {
+            mCells[i] = (i * (cellCount - 1) + 3) % cellCount;
+        }
+        // The rank of the longer patterns of the larger grids does not fit in a long.
+        mRankedCells = Arrays.copyOf(mCells, Math.min(cellCount, 9));
+        mSelectedCells = new SelectedCells(cellCount);
+        mEncoded = PatternCodec.encode(baseCount, mCells);
+    }
+
+    @Benchmark
+    public String asString() {
+        // Adding a cell drops the cached string.
+        mSelectedCells.clear();
+        for (int cell : mCells) {
+            mSelectedCells.add(cell);
+        }
+        return mSelectedCells.asString();
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return PatternCodec.encode(baseCount, mCells);
+    }
+
+    @Benchmark
+    public int[] decode() {
+        return PatternCodec.decode(mEncoded);
+    }
+
+    @Benchmark
+    public long rank() {
+        return PatternCodec.rank(baseCount, mRankedCells);
+    }
+}
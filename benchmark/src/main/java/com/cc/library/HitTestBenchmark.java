@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2016 iChengc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cc.library;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hit-test a touch sample against the grid, alone and as a full sample of a gesture through {@link PatternEngine}.
+ * The table based circular hit-test is compared with the arithmetic square hit-test that {@link PatternView} used
+ * before the geometry tables.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HitTestBenchmark {
+    private static final int SIZE = 1080;
+    private static final int PADDING = 20;
+    private static final int SAMPLE_COUNT = 1024;
+
+    @Param({"3", "4", "6", "8", "10"})
+    public int baseCount;
+
+    private PatternEngine mEngine;
+    private int mLeft, mTop, mDiameter, mPitch, mGridSize;
+    private final float[] mXs = new float[SAMPLE_COUNT];
+    private final float[] mYs = new float[SAMPLE_COUNT];
+    private int mSample;
+
+    @Setup
+    public void setUp() {
+        mEngine = new PatternEngine(baseCount);
+        mEngine.setPreferredSpacing(SIZE / (baseCount * 4));
+        mEngine.layout(SIZE, SIZE, PADDING);
+        CellGeometry geometry = mEngine.getGeometry();
+        mLeft = geometry.getLeft();
+        mTop = geometry.getTop();
+        mDiameter = geometry.getCellRadius() << 1;
+        mPitch = mDiameter + geometry.getSpacing();
+        mGridSize = geometry.getGridSize();
+        // A random walk over the grid, like the samples of a gesture.
+        Random random = new Random(42);
+        float x = SIZE / 2f;
+        float y = SIZE / 2f;
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            x = Math.max(0, Math.min(SIZE, x + random.nextFloat() * 60 - 30));
+            y = Math.max(0, Math.min(SIZE, y + random.nextFloat() * 60 - 30));
+            mXs[i] = x;
+            mYs[i] = y;
+        }
+    }
+
+    private int nextSample() {
+        mSample = (mSample + 1) & (SAMPLE_COUNT - 1);
+        return mSample;
+    }
+
+    @Benchmark
+    public int getCellIndex() {
+        final int i = nextSample();
+        return mEngine.getCellIndex(mXs[i], mYs[i]);
+    }
+
+    /**
+     * The hit-testing of {@link PatternView} before the geometry tables, a cell is hit inside its bounding square.
+     */
+    @Benchmark
+    public int getCellIndexArithmetic() {
+        final int i = nextSample();
+        final int offsetX = (int) mXs[i] - mLeft;
+        final int offsetY = (int) mYs[i] - mTop;
+        if (offsetX < 0 || offsetY < 0 || offsetX > mGridSize || offsetY > mGridSize) {
+            return -1;
+        }
+
+        final int row = offsetY / mPitch;
+        final int column = offsetX / mPitch;
+        if (row >= baseCount || column >= baseCount || offsetY % mPitch > mDiameter || offsetX % mPitch > mDiameter) {
+            return -1;
+        }
+        return row * baseCount + column;
+    }
+
+    @Benchmark
+    public int processTouchSample() {
+        final int i = nextSample();
+        if (i == 0) {
+            mEngine.reset();
+        }
+        mEngine.processTouchSample(mXs[i], mYs[i]);
+        return mEngine.getSelectedCells().size();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2016 iChengc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cc.library;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calculate the positions of the cells: a full layout of the grid and reading the centers back, as every frame does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LayoutBenchmark {
+    private static final int SIZE = 1080;
+
+    @Param({"3", "4", "6", "8", "10"})
+    public int baseCount;
+
+    private final CellGeometry mGeometry = new CellGeometry();
+    private PatternEngine mEngine;
+    private int mCellRadius;
+    private int mSpacing;
+    private int mWidth = SIZE;
+
+    @Setup
+    public void setUp() {
+        mSpacing = SIZE / (baseCount * 4);
+        mCellRadius = (SIZE - mSpacing * (baseCount - 1)) / (baseCount << 1);
+        mGeometry.layout(baseCount, 0, 0, mCellRadius, mSpacing);
+        mEngine = new PatternEngine(baseCount);
+        mEngine.setPreferredSpacing(mSpacing);
+    }
+
+    @Benchmark
+    public CellGeometry layoutGeometry() {
+        mGeometry.layout(baseCount, 0, 0, mCellRadius, mSpacing);
+        return mGeometry;
+    }
+
+    @Benchmark
+    public boolean layoutEngine() {
+        // Change the size so the engine does not skip the layout.
+        mWidth = mWidth == SIZE ? SIZE + 1 : SIZE;
+        return mEngine.layout(mWidth, SIZE, 0);
+    }
+
+    @Benchmark
+    public float readCenters() {
+        float sum = 0;
+        for (int i = 0; i < mGeometry.getCellCount(); i++) {
+            sum += mGeometry.getCenterX(i) + mGeometry.getCenterY(i);
+        }
+        return sum;
+    }
+}
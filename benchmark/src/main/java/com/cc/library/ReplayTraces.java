@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2016 iChengc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cc.library;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Replay trace files through {@link PatternTraceReplayer} from the command line, e.g. on a CI box:
+ * <pre>
+ * ./gradlew :benchmark:replayTraces -Ptraces=trace1.ptr,trace2.ptr
+ * </pre>
+ */
+public final class ReplayTraces {
+
+    private ReplayTraces() {
+    }
+
+    /**
+     * Replay the trace files and exit with status 1 if any gesture does not select the expected pattern.
+     *
+     * @param args the paths of the trace files
+     * @throws IOException if failed to read a trace.
+     */
+    public static void main(String[] args) throws IOException {
+        PatternTraceReplayer replayer = new PatternTraceReplayer();
+        int mismatchCount = 0;
+        for (final String path : args) {
+            replayer.setOnMismatchListener(new PatternTraceReplayer.OnMismatchListener() {
+                @Override
+                public void onMismatch(int gesture, int[] expected, int[] actual) {
+                    System.err.println(String.format("%s: gesture %d expected %s but was %s", path, gesture,
+                            Arrays.toString(expected), Arrays.toString(actual)));
+                }
+            });
+            InputStream in = new BufferedInputStream(new FileInputStream(path));
+            try {
+                PatternTraceReplayer.Result result = replayer.replay(in);
+                mismatchCount += result.getMismatchCount();
+                System.out.println(path + ": " + result);
+            } finally {
+                in.close();
+            }
+        }
+        System.exit(mismatchCount == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2016 iChengc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cc.library;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Select all the cells of the grid and reset, through {@link SelectedCells} alone and through the engine, which also
+ * tracks the selected state and the intermediate cells.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SelectionBenchmark {
+
+    @Param({"3", "4", "6", "8", "10"})
+    public int baseCount;
+
+    private int[] mCells;
+    private SelectedCells mSelectedCells;
+    private PatternEngine mEngine;
+
+    @Setup
+    public void setUp() {
+        final int cellCount = baseCount * baseCount;
+        mCells = new int[cellCount];
+        for (int i = 0; i < cellCount; i++) {
+            mCells[i] = i;
+        }
+        mSelectedCells = new SelectedCells(cellCount);
+        mEngine = new PatternEngine(baseCount);
+        mEngine.layout(1080, 1080, 0);
+    }
+
+    @Benchmark
+    public int addAndClear() {
+        for (int cell : mCells) {
+            mSelectedCells.add(cell);
+        }
+        final int size = mSelectedCells.size();
+        mSelectedCells.clear();
+        return size;
+    }
+
+    @Benchmark
+    public int restoreAndReset() {
+        mEngine.restore(mCells);
+        final int size = mEngine.getSelectedCells().size();
+        mEngine.reset();
+        return size;
+    }
+}
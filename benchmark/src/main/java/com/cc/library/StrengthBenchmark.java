@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2016 iChengc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cc.library;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feed every cell of the grid to a {@link PatternStrengthEstimator.Meter} in a scrambled order, the cost of the
+ * live strength feedback of a whole gesture.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StrengthBenchmark {
+
+    @Param({"3", "6", "9"})
+    public int baseCount;
+
+    private int[] mCells;
+    private PatternStrengthEstimator.Meter mMeter;
+
+    @Setup
+    public void setUp() {
+        final int cellCount = baseCount * baseCount;
+        mCells = new int[cellCount];
+        for (int i = 0; i < cellCount; i++) {
+            // 7 is coprime with the cell counts of the benchmarked grids, so every cell is visited once.
+            mCells[i] = i * 7 % cellCount;
+        }
+        mMeter = PatternStrengthEstimator.get(baseCount).newMeter();
+    }
+
+    @Benchmark
+    public float addAllCells() {
+        mMeter.reset();
+        for (int cell : mCells) {
+            mMeter.add(cell);
+        }
+        return mMeter.getBits();
+    }
+}
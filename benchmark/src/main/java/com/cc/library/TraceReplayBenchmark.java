@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2016 iChengc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cc.library;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replay a trace that swipes through the centers of the cells of every 3x3 pattern up to the length, through
+ * {@link PatternTraceReplayer}. The trace is kept in memory so the decoding and the engine are measured, not the
+ * disk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TraceReplayBenchmark {
+
+    private static final int STEPS_PER_MOVE = 6;
+    private static final long SAMPLE_INTERVAL_MICROS = 8000;
+
+    @Param({"4", "5", "6"})
+    public int maxLength;
+
+    private byte[] mTrace;
+    private PatternTraceReplayer mReplayer;
+
+    @Setup
+    public void setUp() throws IOException {
+        PatternTrace.Config config = new PatternTrace.Config(3, 720, 1080, 20, -1, 100, 1f, true);
+        PatternEngine engine = config.newEngine();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PatternTrace.Writer writer = new PatternTrace.Writer(out, config);
+        long time = 0;
+        for (Iterator<int[]> it = new PatternCounter(config.baseCount).iterator(1, maxLength); it.hasNext(); ) {
+            final int[] pattern = it.next();
+            float x = engine.getCellCenterX(pattern[0]);
+            float y = engine.getCellCenterY(pattern[0]);
+            writer.writeSample(PatternTrace.TYPE_DOWN, time, x, y);
+            for (int i = 1; i < pattern.length; i++) {
+                final float toX = engine.getCellCenterX(pattern[i]);
+                final float toY = engine.getCellCenterY(pattern[i]);
+                for (int step = 1; step <= STEPS_PER_MOVE; step++) {
+                    time += SAMPLE_INTERVAL_MICROS;
+                    writer.writeSample(PatternTrace.TYPE_MOVE, time, x + (toX - x) * step / STEPS_PER_MOVE,
+                            y + (toY - y) * step / STEPS_PER_MOVE);
+                }
+                x = toX;
+                y = toY;
+            }
+            time += SAMPLE_INTERVAL_MICROS;
+            writer.writeSample(PatternTrace.TYPE_UP, time, x, y);
+            writer.writeExpected(pattern);
+            time += 50 * SAMPLE_INTERVAL_MICROS;
+        }
+        writer.close();
+        mTrace = out.toByteArray();
+        mReplayer = new PatternTraceReplayer();
+    }
+
+    @Benchmark
+    public PatternTraceReplayer.Result replay() throws IOException {
+        return mReplayer.replay(new ByteArrayInputStream(mTrace));
+    }
+}
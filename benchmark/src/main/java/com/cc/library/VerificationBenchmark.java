@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2016 iChengc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cc.library;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verify a pattern against a stored hash, which is dominated by the key derivation of {@link PatternVerifier}, and
+ * check a pattern against a blacklist. The iteration counts span the usual range, pick the largest one whose
+ * verification fits the latency budget of the target devices.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VerificationBenchmark {
+    private static final int BASE_COUNT = 3;
+    private static final int[] PATTERN = {0, 4, 8, 5, 2, 1};
+    private static final int[] WRONG_PATTERN = {0, 4, 8, 5, 2};
+
+    @Param({"1000", "5000", "10000", "20000", "50000"})
+    public int iterations;
+
+    private PatternVerifier mVerifier;
+    private String mStoredHash;
+    private PatternBlacklist mBlacklist;
+
+    @Setup
+    public void setUp() {
+        mVerifier = new PatternVerifier(PatternVerifier.DEFAULT_ALGORITHM, iterations);
+        mStoredHash = mVerifier.hash(BASE_COUNT, PATTERN);
+        mBlacklist = new PatternBlacklist.Builder(BASE_COUNT)
+                .add(new int[]{0, 1, 2, 5, 8})
+                .add(new int[]{0, 3, 6, 7, 8})
+                .add(WRONG_PATTERN)
+                .build();
+    }
+
+    @Benchmark
+    public boolean verifyCorrect() {
+        return mVerifier.verify(mStoredHash, BASE_COUNT, PATTERN);
+    }
+
+    @Benchmark
+    public boolean verifyWrong() {
+        return mVerifier.verify(mStoredHash, BASE_COUNT, WRONG_PATTERN);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean blacklisted() {
+        return mBlacklist.contains(PATTERN);
+    }
+}
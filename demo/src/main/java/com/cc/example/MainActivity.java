@@ -2,24 +2,31 @@ package com.cc.example;
 
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
-import android.util.Log;
 import android.view.View;
 import android.widget.Button;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.cc.library.PatternStrengthEstimator;
+import com.cc.library.PatternVerifier;
 import com.cc.library.PatternView;
-
-import java.util.List;
+import com.cc.library.SelectedCells;
 
 public class MainActivity extends AppCompatActivity {
+    private static final int CELL_BASE_COUNT = 3;
 
     private PatternView mPatternView;
     private Button mSetupBtn, mAuthenticBtn;
     private TextView mTips;
 
-    private boolean mIsPasswordSet;
-    private String mPassword;
+    private final PatternVerifier mVerifier = new PatternVerifier();
+
+    private volatile boolean mIsPasswordSet;
+
+    /**
+     * The hash of the pattern, the pattern itself is never kept.
+     */
+    private volatile String mPassword;
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -41,6 +48,7 @@ public class MainActivity extends AppCompatActivity {
                 initAuthenticMode();
             }
         });
+        mPatternView.addOnPatternProgressListener(new StrengthMeterListener());
         initSetupMode();
         //mPatternView.setIsShowPath(false);
     }
@@ -50,35 +58,34 @@ public class MainActivity extends AppCompatActivity {
         mIsPasswordSet = false;
         mPassword = "";
         mTips.setText("Draw an unlock pattern");
-        mPatternView.setOnFinishListener(new PatternView.OnFinishListener() {
+        mPatternView.setOnAsyncFinishListener(new PatternView.OnAsyncFinishListener() {
             @Override
-            public boolean onFinish(PatternView patternView, List<Integer> result, String resultAsString) {
-                Log.e("PatternView", "Result:" + resultAsString);
+            public void onFinish(PatternView patternView, SelectedCells result, PatternView.VerifyCallback callback) {
                 if (mIsPasswordSet) {
-                    String password = resultAsString;
-                    if (password.equals(mPassword)) {
-                        Toast.makeText(MainActivity.this, "Password has setup successfully!", Toast.LENGTH_LONG).show();
+                    if (mVerifier.verify(mPassword, CELL_BASE_COUNT, result)) {
+                        showToast("Password has setup successfully!");
                         mPatternView.postDelayed(new Runnable() {
                             @Override
                             public void run() {
                                 initAuthenticMode();
                             }
                         }, 1000);
-                        return true;
+                        callback.onResult(true);
+                        return;
                     }
-                    mTips.setText("Try again");
-                    return false;
+                    showTips("Try again");
+                    callback.onResult(false);
                 } else {
                     if (result.size() < 4) {
-                        mTips.setText("Connect at least 4 dots, Try again.");
-                        return false;
+                        showTips("Connect at least 4 dots, Try again.");
+                        callback.onResult(false);
+                        return;
                     }
+                    mPassword = mVerifier.hash(CELL_BASE_COUNT, result);
                     mIsPasswordSet = true;
-                    mPassword = resultAsString;
-                    mTips.setText("Draw pattern again to confirm");
-                    return true;
+                    showTips("Draw pattern again to confirm");
+                    callback.onResult(true);
                 }
-
             }
         });
     }
@@ -88,24 +95,61 @@ public class MainActivity extends AppCompatActivity {
         mIsPasswordSet = false;
         mTips.setText("Draw pattern to unlock");
 
-        mPatternView.setOnFinishListener(new PatternView.OnFinishListener() {
+        mPatternView.setOnAsyncFinishListener(new PatternView.OnAsyncFinishListener() {
             @Override
-            public boolean onFinish(PatternView patternView, List<Integer> result, String resultAsString) {
-                Log.e("PatternView", "Result:" + resultAsString);
-                if (resultAsString.equals(mPassword)) {
-                    Toast.makeText(MainActivity.this, "Unlock successful", Toast.LENGTH_LONG).show();
-                    mPatternView.postDelayed(new Runnable() {
-                        @Override
-                        public void run() {
-                            mTips.setText("Draw pattern to unlock");
-                            ;
-                        }
-                    }, 1000);
-
-                    return true;
+            public void onFinish(PatternView patternView, SelectedCells result, PatternView.VerifyCallback callback) {
+                final String password = mPassword;
+                if (password.length() > 0 && mVerifier.verify(password, CELL_BASE_COUNT, result)) {
+                    showToast("Unlock successful");
+                    showTips("Draw pattern to unlock");
+                    callback.onResult(true);
+                    return;
                 }
-                mTips.setText("Try again");
-                return false;
+                showTips("Try again");
+                callback.onResult(false);
+            }
+        });
+    }
+
+    /**
+     * Show the strength of the new pattern while it is being drawn.
+     */
+    private class StrengthMeterListener extends PatternView.SimpleOnPatternProgressListener {
+        private final String[] mStrengthNames = {"weak", "fair", "strong"};
+        private final PatternStrengthEstimator.Meter mMeter =
+                PatternStrengthEstimator.get(CELL_BASE_COUNT).newMeter();
+
+        @Override
+        public void onStart(PatternView patternView) {
+            mMeter.reset();
+        }
+
+        @Override
+        public void onCellAdded(PatternView patternView, int index, int position) {
+            mMeter.add(index);
+            if (patternView.isSetup() && !mIsPasswordSet) {
+                mTips.setText("Strength: " + mStrengthNames[mMeter.getStrength()]);
+            }
+        }
+    }
+
+    /**
+     * The listeners are called on the verify thread, the views must be updated on the main thread.
+     */
+    private void showTips(final String tips) {
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                mTips.setText(tips);
+            }
+        });
+    }
+
+    private void showToast(final String message) {
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                Toast.makeText(MainActivity.this, message, Toast.LENGTH_LONG).show();
             }
         });
     }
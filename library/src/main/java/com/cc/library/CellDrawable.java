@@ -0,0 +1,462 @@
+/*
+ * Copyright (C) 2016 iChengc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cc.library;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.drawable.Drawable;
+
+/**
+ * Draw a cell of the pattern, shared by {@link PatternView} and {@link PatternSurfaceView}.
+ */
+class CellDrawable extends Drawable {
+    private float mPositionX, mPositionY;
+    private Path mArrow;
+    private boolean mIsSelected;
+    private boolean mIsError;
+
+    private int mCellRadius = -1;
+    private int mStrokeWidth;
+    private int mCellColor;
+    private int mErrorColor;
+    private int mInnerCircleRadius;
+
+    private final Paint mPaint;
+
+    /**
+     * The alpha that the selected cells and the arrows are drawn with, see {@link #setAlpha(int)}. The sprites are
+     * drawn by {@link #mSpritePaint} only while it is translucent.
+     */
+    private int mAlpha = 0xff;
+    private final Paint mSpritePaint;
+
+    /**
+     * The direction arrows of the current radius, stroke width and grid, shared through the pool.
+     */
+    private ArrowShapes mArrowShapes;
+
+    /**
+     * The rings of all the cells as a single path, so the idle grid is drawn by one draw call in the batched mode.
+     * It is rebuilt only when the layout changes.
+     */
+    private Path mRingsPath;
+    private int mRingsBaseCount, mRingsLeft = -1, mRingsTop, mRingsRadius, mRingsSpacing;
+
+    /**
+     * The centers of the selected cells, drawn as round points by one draw call in the batched mode.
+     */
+    private float[] mPoints = new float[0];
+
+    /**
+     * The pre-rendered cells of normal, selected and error state, shared through the pool. They are replaced only
+     * when the radius, the stroke width or the colors change, so drawing a cell is a single bitmap blit.
+     */
+    private CellSprites mSprites;
+    private Bitmap mNormalSprite, mSelectedSprite, mErrorSprite;
+
+    /**
+     * The half size of the sprites, the sprite is drawn at the cell's center minus this offset.
+     */
+    private int mSpriteHalfSize;
+
+    /**
+     * The count of the draw calls issued by {@link #draw(Canvas)}.
+     */
+    private int mDrawCallCount;
+
+    public CellDrawable() {
+        mPaint = new Paint();
+        mPaint.setAntiAlias(true);
+        // The points of the batched mode are drawn as discs.
+        mPaint.setStrokeCap(Paint.Cap.ROUND);
+        mSpritePaint = new Paint();
+    }
+
+    void init(int cellRadius, int strokeWidth, int cellColor, int errorColor) {
+        mCellRadius = cellRadius;
+        mStrokeWidth = strokeWidth;
+        mCellColor = cellColor;
+        mErrorColor = errorColor;
+        mInnerCircleRadius = mCellRadius / 3;
+        buildSprites();
+    }
+
+    void set(float x, float y, boolean isSelected, boolean isError, Path arrow) {
+        mPositionX = x;
+        mPositionY = y;
+        mIsSelected = isSelected;
+        mIsError = isError;
+        mArrow = arrow;
+    }
+
+    /**
+     * Get the arrow that points from the cell to the next one.
+     *
+     * @param geometry  the layout of the cells
+     * @param index     the index of the cell
+     * @param nextIndex the index of the next cell
+     * @return the arrow around the origin or null if the cell is too small for the arrow.
+     */
+    Path getArrow(CellGeometry geometry, int index, int nextIndex) {
+        final int baseCount = geometry.getBaseCount();
+        if (mArrowShapes == null || !mArrowShapes.matches(mCellRadius, mStrokeWidth, baseCount)) {
+            final int cellRadius = mCellRadius;
+            final int strokeWidth = mStrokeWidth;
+            ArrowShapes arrowShapes = PatternResourcePool.getDefault().acquire(
+                    new PatternResourcePool.Key(PatternResourcePool.TYPE_ARROWS, cellRadius, strokeWidth, baseCount),
+                    new PatternResourcePool.Loader<ArrowShapes>() {
+                        @Override
+                        public ArrowShapes load() {
+                            return new ArrowShapes(cellRadius, strokeWidth, baseCount);
+                        }
+                    });
+            releaseArrows();
+            mArrowShapes = arrowShapes;
+        }
+        return mArrowShapes.get(geometry, index, nextIndex);
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        if (mNormalSprite == null) {
+            buildSprites();
+        }
+
+        if (mNormalSprite != null) {
+            final Bitmap sprite = !mIsSelected ? mNormalSprite : (mIsError ? mErrorSprite : mSelectedSprite);
+            canvas.drawBitmap(sprite, mPositionX - mSpriteHalfSize, mPositionY - mSpriteHalfSize,
+                    mAlpha < 0xff ? mSpritePaint : null);
+            mDrawCallCount++;
+        } else {
+            drawCell(canvas, mPaint, mPositionX, mPositionY, mIsSelected,
+                    applyAlpha(mIsError && mIsSelected ? mErrorColor : mCellColor), mCellRadius, mInnerCircleRadius,
+                    mStrokeWidth);
+            mDrawCallCount += mIsSelected ? 2 : 1;
+        }
+
+        if (mArrow != null) {
+            drawArrow(canvas, mPositionX, mPositionY, mArrow, mIsError && mIsSelected);
+        }
+    }
+
+    /**
+     * Draw the arrow of a selected cell.
+     *
+     * @param canvas  the canvas
+     * @param x       the x coordinate of the center of the cell
+     * @param y       the y coordinate of the center of the cell
+     * @param arrow   the arrow returned by {@link #getArrow(CellGeometry, int, int)}
+     * @param isError true if the pattern is wrong
+     */
+    void drawArrow(Canvas canvas, float x, float y, Path arrow, boolean isError) {
+        mPaint.setColor(applyAlpha(isError ? mErrorColor : mCellColor));
+        mPaint.setStyle(Paint.Style.FILL);
+        canvas.save();
+        canvas.translate(x, y);
+        canvas.drawPath(arrow, mPaint);
+        canvas.restore();
+        mDrawCallCount++;
+    }
+
+    /**
+     * Draw the rings of all the cells in idle state by one draw call.
+     *
+     * @param canvas   the canvas
+     * @param geometry the layout of the cells
+     */
+    void drawIdleCells(Canvas canvas, CellGeometry geometry) {
+        if (mRingsPath == null || mRingsBaseCount != geometry.getBaseCount() || mRingsLeft != geometry.getLeft()
+                || mRingsTop != geometry.getTop() || mRingsRadius != geometry.getCellRadius()
+                || mRingsSpacing != geometry.getSpacing()) {
+            buildRingsPath(geometry);
+        }
+
+        mPaint.setColor(mCellColor);
+        mPaint.setStyle(Paint.Style.STROKE);
+        mPaint.setStrokeWidth(mStrokeWidth);
+        canvas.drawPath(mRingsPath, mPaint);
+        mDrawCallCount++;
+    }
+
+    private void buildRingsPath(CellGeometry geometry) {
+        mRingsBaseCount = geometry.getBaseCount();
+        mRingsLeft = geometry.getLeft();
+        mRingsTop = geometry.getTop();
+        mRingsRadius = geometry.getCellRadius();
+        mRingsSpacing = geometry.getSpacing();
+        if (mRingsPath == null) {
+            mRingsPath = new Path();
+        } else {
+            mRingsPath.rewind();
+        }
+        for (int i = 0; i < geometry.getCellCount(); i++) {
+            mRingsPath.addCircle(geometry.getCenterX(i), geometry.getCenterY(i), mRingsRadius, Path.Direction.CW);
+        }
+    }
+
+    /**
+     * Draw the selected cells over the idle rings by one draw call: their inner circles, or the whole cells filled
+     * at the low level of detail.
+     *
+     * @param canvas      the canvas
+     * @param geometry    the layout of the cells
+     * @param cells       the selected cells
+     * @param isError     true if the pattern is wrong
+     * @param isLowDetail true to fill the whole cells instead of drawing the inner circles
+     */
+    void drawSelectedCells(Canvas canvas, CellGeometry geometry, SelectedCells cells, boolean isError,
+                           boolean isLowDetail) {
+        final int count = cells.size();
+        if (count == 0) {
+            return;
+        }
+
+        if (mPoints.length < count << 1) {
+            mPoints = new float[geometry.getCellCount() << 1];
+        }
+        for (int i = 0; i < count; i++) {
+            final int index = cells.get(i);
+            mPoints[i << 1] = geometry.getCenterX(index);
+            mPoints[(i << 1) + 1] = geometry.getCenterY(index);
+        }
+
+        mPaint.setColor(applyAlpha(isError ? mErrorColor : mCellColor));
+        mPaint.setStyle(Paint.Style.FILL);
+        // The filled cells cover the stroke of the rings.
+        mPaint.setStrokeWidth(isLowDetail ? (mCellRadius << 1) + mStrokeWidth : mInnerCircleRadius << 1);
+        canvas.drawPoints(mPoints, 0, count << 1, mPaint);
+        mDrawCallCount++;
+    }
+
+    private static void drawCell(Canvas canvas, Paint paint, float x, float y, boolean isSelected, int color,
+                                 int cellRadius, int innerCircleRadius, int strokeWidth) {
+        paint.setColor(color);
+        // Draw inner circle
+        if (isSelected) {
+            paint.setStyle(Paint.Style.FILL);
+            canvas.drawCircle(x, y, innerCircleRadius, paint);
+        }
+        paint.setStrokeWidth(strokeWidth);
+        paint.setStyle(Paint.Style.STROKE);
+        canvas.drawCircle(x, y, cellRadius, paint);
+    }
+
+    /**
+     * Acquire the cell sprites if the radius, stroke width or colors have changed since they were last acquired.
+     */
+    private void buildSprites() {
+        if (mCellRadius <= 0) {
+            return;
+        }
+
+        if (mSprites != null && mSprites.matches(mCellRadius, mStrokeWidth, mCellColor, mErrorColor)) {
+            return;
+        }
+
+        final int cellRadius = mCellRadius;
+        final int strokeWidth = mStrokeWidth;
+        final int cellColor = mCellColor;
+        final int errorColor = mErrorColor;
+        CellSprites sprites = PatternResourcePool.getDefault().acquire(
+                new PatternResourcePool.Key(PatternResourcePool.TYPE_SPRITES, cellRadius, strokeWidth, cellColor,
+                        errorColor),
+                new PatternResourcePool.Loader<CellSprites>() {
+                    @Override
+                    public CellSprites load() {
+                        return new CellSprites(cellRadius, strokeWidth, cellColor, errorColor);
+                    }
+                });
+        releaseSprites();
+        mSprites = sprites;
+        mNormalSprite = sprites.mNormal;
+        mSelectedSprite = sprites.mSelected;
+        mErrorSprite = sprites.mError;
+        mSpriteHalfSize = sprites.mHalfSize;
+    }
+
+    int getDrawCallCount() {
+        return mDrawCallCount;
+    }
+
+    /**
+     * Release the shared sprites and arrows, they are acquired again when they are needed.
+     */
+    void releaseResources() {
+        releaseSprites();
+        releaseArrows();
+    }
+
+    private void releaseSprites() {
+        if (mSprites != null) {
+            PatternResourcePool.getDefault().release(mSprites);
+            mSprites = null;
+            mNormalSprite = null;
+            mSelectedSprite = null;
+            mErrorSprite = null;
+        }
+    }
+
+    private void releaseArrows() {
+        if (mArrowShapes != null) {
+            PatternResourcePool.getDefault().release(mArrowShapes);
+            mArrowShapes = null;
+        }
+    }
+
+    /**
+     * The sprites of a cell in normal, selected and error state.
+     */
+    private static final class CellSprites extends PatternResourcePool.Resource {
+        private final int mCellRadius, mStrokeWidth, mCellColor, mErrorColor;
+        final int mHalfSize;
+        final Bitmap mNormal, mSelected, mError;
+
+        CellSprites(int cellRadius, int strokeWidth, int cellColor, int errorColor) {
+            mCellRadius = cellRadius;
+            mStrokeWidth = strokeWidth;
+            mCellColor = cellColor;
+            mErrorColor = errorColor;
+            // The stroke is centered on the circle, so leave room for it outside of the radius.
+            mHalfSize = cellRadius + strokeWidth;
+            Paint paint = new Paint();
+            paint.setAntiAlias(true);
+            mNormal = createSprite(paint, false, cellColor);
+            mSelected = createSprite(paint, true, cellColor);
+            mError = createSprite(paint, true, errorColor);
+        }
+
+        private Bitmap createSprite(Paint paint, boolean isSelected, int color) {
+            final int size = mHalfSize << 1;
+            Bitmap sprite = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+            drawCell(new Canvas(sprite), paint, mHalfSize, mHalfSize, isSelected, color, mCellRadius,
+                    mCellRadius / 3, mStrokeWidth);
+            return sprite;
+        }
+
+        boolean matches(int cellRadius, int strokeWidth, int cellColor, int errorColor) {
+            return mCellRadius == cellRadius && mStrokeWidth == strokeWidth && mCellColor == cellColor
+                    && mErrorColor == errorColor;
+        }
+
+        @Override
+        long getSize() {
+            return 3L * mNormal.getRowBytes() * mNormal.getHeight();
+        }
+
+        @Override
+        void recycle() {
+            mNormal.recycle();
+            mSelected.recycle();
+            mError.recycle();
+        }
+    }
+
+    /**
+     * The direction arrows around the origin, indexed by the row and column delta from the cell to the next one.
+     * There is only a finite set of directions in a grid, so every arrow is built once and drawn by translating the
+     * canvas to the cell. The arrows are built when they are first needed, by any of the threads that share them.
+     */
+    private static final class ArrowShapes extends PatternResourcePool.Resource {
+        /**
+         * The estimated memory of an arrow.
+         */
+        private static final int ARROW_SIZE = 128;
+
+        private final int mCellRadius, mStrokeWidth, mBaseCount;
+        private final boolean mHasArrow;
+        private final Path[] mArrows;
+        private final float[] mVertices = new float[6];
+
+        ArrowShapes(int cellRadius, int strokeWidth, int baseCount) {
+            mCellRadius = cellRadius;
+            mStrokeWidth = strokeWidth;
+            mBaseCount = baseCount;
+            final int innerCircleRadius = cellRadius / 3;
+            mHasArrow = cellRadius - innerCircleRadius > strokeWidth
+                    && (cellRadius - strokeWidth - innerCircleRadius) / 3 >= strokeWidth;
+            final int deltaSpan = (baseCount << 1) - 1;
+            mArrows = new Path[mHasArrow ? deltaSpan * deltaSpan : 0];
+        }
+
+        boolean matches(int cellRadius, int strokeWidth, int baseCount) {
+            return mCellRadius == cellRadius && mStrokeWidth == strokeWidth && mBaseCount == baseCount;
+        }
+
+        /**
+         * @return the arrow from the cell to the next one, or null if the cell is too small for the arrow.
+         */
+        synchronized Path get(CellGeometry geometry, int index, int nextIndex) {
+            if (!mHasArrow) {
+                return null;
+            }
+
+            final int key = geometry.getDirectionKey(index, nextIndex);
+            Path arrow = mArrows[key];
+            if (arrow == null) {
+                CellGeometry.getArrowVertices(geometry.getRow(nextIndex) - geometry.getRow(index),
+                        geometry.getColumn(nextIndex) - geometry.getColumn(index), mCellRadius, mStrokeWidth,
+                        mCellRadius / 3, mVertices);
+                arrow = new Path();
+                arrow.moveTo(mVertices[0], mVertices[1]);
+                arrow.lineTo(mVertices[2], mVertices[3]);
+                arrow.lineTo(mVertices[4], mVertices[5]);
+                arrow.close();
+                mArrows[key] = arrow;
+            }
+            return arrow;
+        }
+
+        @Override
+        long getSize() {
+            return (long) mArrows.length * ARROW_SIZE;
+        }
+    }
+
+    /**
+     * @return the color with its alpha multiplied by {@link #mAlpha}.
+     */
+    private int applyAlpha(int color) {
+        if (mAlpha == 0xff) {
+            return color;
+        }
+        return (color & 0xffffff) | (Color.alpha(color) * mAlpha / 0xff) << 24;
+    }
+
+    /**
+     * Set the alpha of the cells and the arrows drawn afterwards, e.g. to show that a pattern is pending.
+     *
+     * @param alpha the alpha in range [0, 255], 255 is opaque.
+     */
+    @Override
+    public void setAlpha(int alpha) {
+        mAlpha = alpha;
+        mSpritePaint.setAlpha(alpha);
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+
+    }
+
+    @Override
+    public int getOpacity() {
+        return 0;
+    }
+}
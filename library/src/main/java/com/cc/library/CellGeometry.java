@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2016 iChengc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cc.library;
+
+/**
+ * The layout of the cells, computed once when the layout changes so drawing and hit-testing only read arrays.
+ * <p>
+ * A touch hits a cell if it is inside the hit circle of the cell, whose radius is the cell radius multiplied by
+ * the hit radius scale. The candidate cell is the nearest row and column, read from per-axis tables keyed by the
+ * quantized offset, and a single distance check decides the hit. The tables make the circular hit-test no slower
+ * than the square one it replaced, they are not meant to be faster, see {@code HitTestBenchmark}.
+ */
+final class CellGeometry {
+
+    private int mBaseCount;
+    private int mCellCount;
+    private int mLeft, mTop;
+    private int mCellRadius;
+    private int mSpacing;
+
+    private float mHitRadiusScale = 1f;
+    private float mHitRadius;
+    private float mHitRadiusSquare;
+
+    /**
+     * The margin of the lookup tables outside of the grid, the hit circles may exceed the cells.
+     */
+    private int mHitMargin;
+
+    /**
+     * The center of every cell.
+     */
+    private float[] mCenterX = new float[0];
+    private float[] mCenterY = new float[0];
+
+    /**
+     * The row and column of every cell.
+     */
+    private int[] mRows = new int[0];
+    private int[] mColumns = new int[0];
+
+    /**
+     * The nearest column of every x offset and the nearest row of every y offset from the top left corner of the
+     * grid minus {@link #mHitMargin}, the grid is square so both axes share the table. The table is shared by the
+     * identical grids through the {@link PatternResourcePool}.
+     */
+    private int[] mNearestAt = new int[0];
+
+    /**
+     * The pooled table that {@link #mNearestAt} belongs to, it is held until {@link #releaseResources()}.
+     */
+    private HitTable mHitTable;
+
+    /**
+     * Layout the cells.
+     *
+     * @param baseCount  the base count of the cell
+     * @param left       the left of the grid
+     * @param top        the top of the grid
+     * @param cellRadius the radius of the cell
+     * @param spacing    the spacing of the two cell
+     */
+    void layout(int baseCount, int left, int top, int cellRadius, int spacing) {
+        mBaseCount = baseCount;
+        mCellCount = baseCount * baseCount;
+        mLeft = left;
+        mTop = top;
+        mCellRadius = cellRadius;
+        mSpacing = spacing;
+
+        if (mCenterX.length != mCellCount) {
+            mCenterX = new float[mCellCount];
+            mCenterY = new float[mCellCount];
+            mRows = new int[mCellCount];
+            mColumns = new int[mCellCount];
+        }
+
+        final int cellSize = cellRadius << 1;
+        final int pitch = cellSize + spacing;
+        for (int i = 0; i < mCellCount; i++) {
+            mRows[i] = i / baseCount;
+            mColumns[i] = i % baseCount;
+            mCenterX[i] = left + mColumns[i] * pitch + cellRadius;
+            mCenterY[i] = top + mRows[i] * pitch + cellRadius;
+        }
+
+        buildHitTables();
+    }
+
+    /**
+     * Set the scale of the hit radius to the cell radius, 1 means a touch must be inside the cell's circle.
+     *
+     * @param scale the scale of the hit radius
+     */
+    void setHitRadiusScale(float scale) {
+        mHitRadiusScale = scale;
+        if (mCellCount > 0) {
+            buildHitTables();
+        }
+    }
+
+    float getHitRadiusScale() {
+        return mHitRadiusScale;
+    }
+
+    private void buildHitTables() {
+        mHitRadius = mCellRadius * mHitRadiusScale;
+        mHitRadiusSquare = mHitRadius * mHitRadius;
+        mHitMargin = Math.max(0, (int) Math.ceil(mHitRadius) - mCellRadius);
+
+        final int baseCount = mBaseCount;
+        final int cellRadius = mCellRadius;
+        final int spacing = mSpacing;
+        final int hitMargin = mHitMargin;
+        final PatternResourcePool pool = PatternResourcePool.getDefault();
+        HitTable table = pool.acquire(
+                new PatternResourcePool.Key(PatternResourcePool.TYPE_HIT_TABLE, baseCount, cellRadius, spacing,
+                        hitMargin),
+                new PatternResourcePool.Loader<HitTable>() {
+                    @Override
+                    public HitTable load() {
+                        return new HitTable(baseCount, cellRadius, spacing, hitMargin);
+                    }
+                });
+        // Release the old table after the new one is acquired, so an unchanged table stays in the pool.
+        releaseResources();
+        mHitTable = table;
+        mNearestAt = table.mNearestAt;
+    }
+
+    /**
+     * Release the hit-test table to the pool. It is acquired again by the next hit test or layout.
+     */
+    void releaseResources() {
+        if (mHitTable != null) {
+            PatternResourcePool.getDefault().release(mHitTable);
+            mHitTable = null;
+            mNearestAt = new int[0];
+        }
+    }
+
+    /**
+     * The nearest row or column of every offset of a grid.
+     */
+    private static final class HitTable extends PatternResourcePool.Resource {
+        final int[] mNearestAt;
+
+        HitTable(int baseCount, int cellRadius, int spacing, int hitMargin) {
+            final int length = (cellRadius << 1) * baseCount + spacing * (baseCount - 1) + (hitMargin << 1) + 1;
+            mNearestAt = new int[length];
+            final int pitch = (cellRadius << 1) + spacing;
+            for (int i = 0; i < length; i++) {
+                // The boundaries between the nearest cells are in the middle of the spacing.
+                final int nearest = (i - hitMargin + (spacing >> 1)) / pitch;
+                mNearestAt[i] = Math.max(0, Math.min(baseCount - 1, nearest));
+            }
+        }
+
+        @Override
+        long getSize() {
+            return (long) mNearestAt.length << 2;
+        }
+    }
+
+    int getBaseCount() {
+        return mBaseCount;
+    }
+
+    int getCellCount() {
+        return mCellCount;
+    }
+
+    int getLeft() {
+        return mLeft;
+    }
+
+    int getTop() {
+        return mTop;
+    }
+
+    int getCellRadius() {
+        return mCellRadius;
+    }
+
+    int getSpacing() {
+        return mSpacing;
+    }
+
+    /**
+     * @return the width and height of the grid.
+     */
+    int getGridSize() {
+        return mBaseCount <= 0 ? 0 : (mCellRadius << 1) * mBaseCount + mSpacing * (mBaseCount - 1);
+    }
+
+    float getCenterX(int index) {
+        return mCenterX[index];
+    }
+
+    float getCenterY(int index) {
+        return mCenterY[index];
+    }
+
+    int getRow(int index) {
+        return mRows[index];
+    }
+
+    int getColumn(int index) {
+        return mColumns[index];
+    }
+
+    float getHitRadius() {
+        return mHitRadius;
+    }
+
+    /**
+     * @param min the smallest offset of a span from the left or top edge of the grid
+     * @return the first row or column whose hit circles reach into the span, or the base count if there is none.
+     */
+    int getFirstLineInSpan(float min) {
+        final int pitch = (mCellRadius << 1) + mSpacing;
+        final int line = (int) Math.ceil((min - mCellRadius - mHitRadius) / pitch);
+        return Math.max(0, Math.min(mBaseCount, line));
+    }
+
+    /**
+     * @param max the largest offset of a span from the left or top edge of the grid
+     * @return the last row or column whose hit circles reach into the span, or -1 if there is none.
+     */
+    int getLastLineInSpan(float max) {
+        final int pitch = (mCellRadius << 1) + mSpacing;
+        final int line = (int) Math.floor((max - mCellRadius + mHitRadius) / pitch);
+        return Math.max(-1, Math.min(mBaseCount - 1, line));
+    }
+
+    /**
+     * @param index     the index of the cell
+     * @param nextIndex the index of the next cell
+     * @return the key of the direction from the cell to the next one, in range [0, (2 * baseCount - 1)^2).
+     */
+    int getDirectionKey(int index, int nextIndex) {
+        final int deltaRow = mRows[nextIndex] - mRows[index];
+        final int deltaColumn = mColumns[nextIndex] - mColumns[index];
+        return (deltaRow + mBaseCount - 1) * ((mBaseCount << 1) - 1) + deltaColumn + mBaseCount - 1;
+    }
+
+    /**
+     * Compute the vertices of the triangle arrow that points along the direction, around the origin of the cell.
+     *
+     * @param deltaRow          the row delta from the cell to the next one
+     * @param deltaColumn       the column delta from the cell to the next one
+     * @param cellRadius        the radius of the cell
+     * @param strokeWidth       the stroke width of the cell
+     * @param innerCircleRadius the radius of the inner circle of the cell
+     * @param vertices          receives the x and y of the top vertex and the two bottom vertices
+     */
+    static void getArrowVertices(int deltaRow, int deltaColumn, int cellRadius, int strokeWidth,
+                                 int innerCircleRadius, float[] vertices) {
+        final double angle = Math.atan2(deltaRow, deltaColumn);
+        // The height of the triangle
+        final int triangleHeight = (cellRadius - strokeWidth - innerCircleRadius) / 3;
+        // The distance between the top vertex of the triangle and the cell's original point.
+        final int distanceTopVertex = (triangleHeight << 1) + innerCircleRadius;
+
+        final double bottomVertexAngle = Math.atan(triangleHeight / Math.sqrt(3) / (distanceTopVertex - triangleHeight));
+        final double distanceBottomVertex = Math.sqrt(Math.pow(triangleHeight, 2) / 3 + Math.pow(distanceTopVertex - triangleHeight, 2));
+
+        vertices[0] = distanceTopVertex * (float) Math.cos(angle);
+        vertices[1] = distanceTopVertex * (float) Math.sin(angle);
+        vertices[2] = (float) (distanceBottomVertex * Math.cos(angle + bottomVertexAngle));
+        vertices[3] = (float) (distanceBottomVertex * Math.sin(angle + bottomVertexAngle));
+        vertices[4] = (float) (distanceBottomVertex * Math.cos(angle - bottomVertexAngle));
+        vertices[5] = (float) (distanceBottomVertex * Math.sin(angle - bottomVertexAngle));
+    }
+
+    /**
+     * Get index of the cell that located in the specified position.
+     *
+     * @param x the x coordinate position
+     * @param y the y coordinate position
+     * @return -1 if no cell located in this position otherwise return the index of the cell.
+     */
+    int getCellIndex(float x, float y) {
+        if (mHitTable == null && mCellCount > 0) {
+            buildHitTables();
+        }
+        final int offsetX = (int) x - mLeft + mHitMargin;
+        final int offsetY = (int) y - mTop + mHitMargin;
+        if (offsetX < 0 || offsetY < 0 || offsetX >= mNearestAt.length || offsetY >= mNearestAt.length) {
+            return -1;
+        }
+
+        final int index = mNearestAt[offsetY] * mBaseCount + mNearestAt[offsetX];
+        final float deltaX = x - mCenterX[index];
+        final float deltaY = y - mCenterY[index];
+        return deltaX * deltaX + deltaY * deltaY <= mHitRadiusSquare ? index : -1;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2016 iChengc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cc.library;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The table of the cells that lie between two cells of a {@code baseCount} * {@code baseCount} grid.
+ * <p>
+ * The cells crossed by the segment from one cell to another only depend on the row and column deltas, the k-th
+ * intermediate cell is {@code from + (k + 1) * step}. So the table holds the count and the index step for every
+ * delta, it is built once per grid size and shared by all the views of that size.
+ */
+final class IntermediateCellTable {
+
+    private static final Map<Integer, IntermediateCellTable> sTables = new HashMap<Integer, IntermediateCellTable>();
+
+    private final int mBaseCount;
+
+    /**
+     * The width of the delta table, the deltas are in range [-(baseCount - 1), baseCount - 1].
+     */
+    private final int mDeltaSpan;
+
+    /**
+     * The row and column of every cell.
+     */
+    private final int[] mRows, mColumns;
+
+    /**
+     * The count of intermediate cells of every delta.
+     */
+    private final int[] mCounts;
+
+    /**
+     * The index step between two consecutive intermediate cells of every delta.
+     */
+    private final int[] mSteps;
+
+    private IntermediateCellTable(int baseCount) {
+        mBaseCount = baseCount;
+        mDeltaSpan = (baseCount << 1) - 1;
+
+        final int cellCount = baseCount * baseCount;
+        mRows = new int[cellCount];
+        mColumns = new int[cellCount];
+        for (int i = 0; i < cellCount; i++) {
+            mRows[i] = i / baseCount;
+            mColumns[i] = i % baseCount;
+        }
+
+        mCounts = new int[mDeltaSpan * mDeltaSpan];
+        mSteps = new int[mDeltaSpan * mDeltaSpan];
+        for (int deltaRow = 1 - baseCount; deltaRow < baseCount; deltaRow++) {
+            for (int deltaColumn = 1 - baseCount; deltaColumn < baseCount; deltaColumn++) {
+                final int gcd = gcd(Math.abs(deltaRow), Math.abs(deltaColumn));
+                if (gcd <= 1) {
+                    continue;
+                }
+
+                final int key = key(deltaRow, deltaColumn);
+                mCounts[key] = gcd - 1;
+                mSteps[key] = deltaRow / gcd * baseCount + deltaColumn / gcd;
+            }
+        }
+    }
+
+    /**
+     * Get the shared table of the specified grid size.
+     *
+     * @param baseCount the base count of the cell
+     * @return the table.
+     */
+    static synchronized IntermediateCellTable get(int baseCount) {
+        IntermediateCellTable table = sTables.get(baseCount);
+        if (table == null) {
+            table = new IntermediateCellTable(baseCount);
+            sTables.put(baseCount, table);
+        }
+        return table;
+    }
+
+    int getBaseCount() {
+        return mBaseCount;
+    }
+
+    /**
+     * Get the count of the cells that lie between the two cells.
+     *
+     * @param from the index of the start cell
+     * @param to   the index of the end cell
+     * @return the count of the intermediate cells.
+     */
+    int getCount(int from, int to) {
+        return mCounts[key(mRows[to] - mRows[from], mColumns[to] - mColumns[from])];
+    }
+
+    /**
+     * Get the intermediate cell at the specified position, the cells are ordered from {@code from} to {@code to}.
+     *
+     * @param from     the index of the start cell
+     * @param to       the index of the end cell
+     * @param position the position of the intermediate cell, in range [0, {@link #getCount(int, int)})
+     * @return the index of the intermediate cell.
+     */
+    int getCell(int from, int to, int position) {
+        return from + (position + 1) * mSteps[key(mRows[to] - mRows[from], mColumns[to] - mColumns[from])];
+    }
+
+    private int key(int deltaRow, int deltaColumn) {
+        return (deltaRow + mBaseCount - 1) * mDeltaSpan + deltaColumn + mBaseCount - 1;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            final int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright (C) 2016 iChengc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cc.library;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A set of the patterns that must be rejected, e.g. the most common ones. It is a trie over the cells that is fed
+ * one cell at a time, so whether the pattern is blacklisted is known as soon as the last cell is selected:
+ * <pre>
+ * int state = blacklist.getInitialState();
+ * state = blacklist.next(state, cell); // for every selected cell
+ * boolean isRejected = blacklist.isBlacklisted(state);
+ * </pre>
+ * The nodes of the trie are numbered in breadth first order, so the children of a node are consecutive and the
+ * child reached by the i-th edge is the node i + 1. The trie is then only the count of the children of every node,
+ * the cell of every edge and the terminal flags, it is stored in the same form so it is loaded without parsing.
+ */
+public final class PatternBlacklist {
+
+    /**
+     * The state after a cell that no blacklisted pattern continues with, it never matches again.
+     */
+    public static final int NO_MATCH = -1;
+
+    /**
+     * The largest base count that is supported, the cells and the counts of the children are stored in a byte.
+     */
+    public static final int MAX_BASE_COUNT = 15;
+
+    private static final int MAGIC = 0x50424c31;
+
+    private final int mBaseCount;
+
+    /**
+     * The index of the first edge of every node, the edges of node i are in range [mFirstEdges[i],
+     * mFirstEdges[i + 1]).
+     */
+    private final int[] mFirstEdges;
+
+    /**
+     * The cell of every edge, the edges of a node are in increasing order of the cell.
+     */
+    private final byte[] mEdgeCells;
+
+    /**
+     * The nodes that end a blacklisted pattern, a bit per node.
+     */
+    private final long[] mTerminals;
+
+    private final int mPatternCount;
+
+    private PatternBlacklist(int baseCount, int[] firstEdges, byte[] edgeCells, long[] terminals) {
+        mBaseCount = baseCount;
+        mFirstEdges = firstEdges;
+        mEdgeCells = edgeCells;
+        mTerminals = terminals;
+        int patternCount = 0;
+        for (long word : terminals) {
+            patternCount += Long.bitCount(word);
+        }
+        mPatternCount = patternCount;
+    }
+
+    public int getBaseCount() {
+        return mBaseCount;
+    }
+
+    /**
+     * @return the count of the blacklisted patterns.
+     */
+    public int getPatternCount() {
+        return mPatternCount;
+    }
+
+    /**
+     * @return the count of the nodes of the trie.
+     */
+    public int getNodeCount() {
+        return mFirstEdges.length - 1;
+    }
+
+    /**
+     * @return the state before the first cell is selected.
+     */
+    public int getInitialState() {
+        return 0;
+    }
+
+    /**
+     * Get the state after the cell is selected.
+     *
+     * @param state the current state
+     * @param cell  the index of the selected cell
+     * @return the next state, or {@link #NO_MATCH} if no blacklisted pattern continues with the cell.
+     */
+    public int next(int state, int cell) {
+        if (state == NO_MATCH) {
+            return NO_MATCH;
+        }
+
+        final int end = mFirstEdges[state + 1];
+        for (int edge = mFirstEdges[state]; edge < end; edge++) {
+            final int edgeCell = mEdgeCells[edge] & 0xff;
+            if (edgeCell == cell) {
+                return edge + 1;
+            }
+            if (edgeCell > cell) {
+                break;
+            }
+        }
+        return NO_MATCH;
+    }
+
+    /**
+     * @param state the current state
+     * @return true if the cells that led to the state are a blacklisted pattern.
+     */
+    public boolean isBlacklisted(int state) {
+        return state != NO_MATCH && (mTerminals[state >> 6] & (1L << state)) != 0;
+    }
+
+    /**
+     * @param cells the indexes of the cells in selection order
+     * @return true if the pattern is blacklisted.
+     */
+    public boolean contains(int[] cells) {
+        int state = getInitialState();
+        for (int cell : cells) {
+            state = next(state, cell);
+        }
+        return isBlacklisted(state);
+    }
+
+    /**
+     * Write the blacklist in the form that {@link #read(InputStream)} loads.
+     *
+     * @param out the output stream, it is not closed.
+     * @throws IOException if failed to write.
+     */
+    public void write(OutputStream out) throws IOException {
+        final int nodeCount = getNodeCount();
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeByte(mBaseCount);
+        data.writeInt(nodeCount);
+        final byte[] childCounts = new byte[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            childCounts[i] = (byte) (mFirstEdges[i + 1] - mFirstEdges[i]);
+        }
+        data.write(childCounts);
+        data.write(mEdgeCells);
+        for (int i = 0; i < (nodeCount + 7) >> 3; i++) {
+            data.writeByte((int) (mTerminals[i >> 3] >>> ((i & 7) << 3)));
+        }
+        data.flush();
+    }
+
+    /**
+     * Load the blacklist written by {@link #write(OutputStream)}.
+     *
+     * @param in the input stream, it is not closed.
+     * @return the blacklist.
+     * @throws IOException if failed to read or the data is malformed.
+     */
+    public static PatternBlacklist read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a pattern blacklist");
+        }
+
+        final int baseCount = data.readUnsignedByte();
+        final int nodeCount = data.readInt();
+        if (baseCount <= 0 || baseCount > MAX_BASE_COUNT || nodeCount <= 0) {
+            throw new IOException("Malformed pattern blacklist");
+        }
+
+        final int cellCount = baseCount * baseCount;
+        final byte[] childCounts = new byte[nodeCount];
+        data.readFully(childCounts);
+        final int[] firstEdges = new int[nodeCount + 1];
+        for (int i = 0; i < nodeCount; i++) {
+            final int childCount = childCounts[i] & 0xff;
+            if (childCount > cellCount) {
+                throw new IOException("Malformed pattern blacklist");
+            }
+            firstEdges[i + 1] = firstEdges[i] + childCount;
+        }
+        // Every node but the root is reached by exactly one edge.
+        if (firstEdges[nodeCount] != nodeCount - 1) {
+            throw new IOException("Malformed pattern blacklist");
+        }
+
+        final byte[] edgeCells = new byte[nodeCount - 1];
+        data.readFully(edgeCells);
+        for (int i = 0; i < nodeCount; i++) {
+            int previousCell = -1;
+            for (int edge = firstEdges[i]; edge < firstEdges[i + 1]; edge++) {
+                final int cell = edgeCells[edge] & 0xff;
+                if (cell >= cellCount || cell <= previousCell) {
+                    throw new IOException("Malformed pattern blacklist");
+                }
+                previousCell = cell;
+            }
+        }
+
+        final byte[] terminalBytes = new byte[(nodeCount + 7) >> 3];
+        data.readFully(terminalBytes);
+        final long[] terminals = new long[(nodeCount + 63) >> 6];
+        for (int i = 0; i < terminalBytes.length; i++) {
+            terminals[i >> 3] |= (terminalBytes[i] & 0xffL) << ((i & 7) << 3);
+        }
+        return new PatternBlacklist(baseCount, firstEdges, edgeCells, terminals);
+    }
+
+    /**
+     * Build a {@link PatternBlacklist} from the patterns.
+     */
+    public static final class Builder {
+        private final int mBaseCount;
+        private final int mCellCount;
+
+        /**
+         * The children of every node indexed by {@code node * cellCount + cell}, 0 if there is no child.
+         */
+        private int[] mChildren;
+        private boolean[] mIsTerminal;
+        private int mNodeCount = 1;
+
+        /**
+         * @param baseCount the base count of the grid of the patterns
+         */
+        public Builder(int baseCount) {
+            if (baseCount <= 0 || baseCount > MAX_BASE_COUNT) {
+                throw new IllegalArgumentException("Unsupported base count: " + baseCount);
+            }
+            mBaseCount = baseCount;
+            mCellCount = baseCount * baseCount;
+            mChildren = new int[mCellCount << 4];
+            mIsTerminal = new boolean[16];
+        }
+
+        /**
+         * Add a pattern to the blacklist.
+         *
+         * @param cells the indexes of the cells in selection order
+         * @return this builder.
+         */
+        public Builder add(int[] cells) {
+            PatternCodec.checkPattern(mBaseCount, cells);
+            int node = 0;
+            for (int cell : cells) {
+                int child = mChildren[node * mCellCount + cell];
+                if (child == 0) {
+                    child = mNodeCount++;
+                    if (mNodeCount > mIsTerminal.length) {
+                        final boolean[] isTerminal = new boolean[mIsTerminal.length << 1];
+                        System.arraycopy(mIsTerminal, 0, isTerminal, 0, mIsTerminal.length);
+                        mIsTerminal = isTerminal;
+                        final int[] children = new int[isTerminal.length * mCellCount];
+                        System.arraycopy(mChildren, 0, children, 0, mChildren.length);
+                        mChildren = children;
+                    }
+                    mChildren[node * mCellCount + cell] = child;
+                }
+                node = child;
+            }
+            mIsTerminal[node] = true;
+            return this;
+        }
+
+        /**
+         * Add a pattern to the blacklist.
+         *
+         * @param pattern the selected cells
+         * @return this builder.
+         */
+        public Builder add(SelectedCells pattern) {
+            return add(pattern.toArray());
+        }
+
+        public PatternBlacklist build() {
+            // Renumber the nodes in breadth first order.
+            final int[] order = new int[mNodeCount];
+            final int[] firstEdges = new int[mNodeCount + 1];
+            final byte[] edgeCells = new byte[mNodeCount - 1];
+            final long[] terminals = new long[(mNodeCount + 63) >> 6];
+            int tail = 1;
+            for (int head = 0; head < mNodeCount; head++) {
+                final int node = order[head];
+                if (mIsTerminal[node]) {
+                    terminals[head >> 6] |= 1L << head;
+                }
+                firstEdges[head] = tail - 1;
+                for (int cell = 0; cell < mCellCount; cell++) {
+                    final int child = mChildren[node * mCellCount + cell];
+                    if (child != 0) {
+                        edgeCells[tail - 1] = (byte) cell;
+                        order[tail++] = child;
+                    }
+                }
+            }
+            firstEdges[mNodeCount] = mNodeCount - 1;
+            return new PatternBlacklist(mBaseCount, firstEdges, edgeCells, terminals);
+        }
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright (C) 2016 iChengc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cc.library;
+
+/**
+ * Convert the patterns to compact bytes and to {@code long} ranks.
+ * <p>
+ * The bytes of a pattern on a grid up to 4x4 are a header byte followed by the cells packed two per byte. The header
+ * has the high bit set, the base count minus one in bit 5-6 and the count of the cells in bit 0-4. The bytes of a
+ * pattern on a larger grid are the base count byte followed by the cells as varints, a base count larger than 127
+ * is written as a zero byte followed by the base count as varint.
+ * <p>
+ * The rank is a bijection between the patterns, that never select a cell twice, and the numbers from 0 to
+ * {@link #getPatternCount(int)} - 1. The patterns are ordered by their length and then by their cells, the empty
+ * pattern is 0.
+ */
+public final class PatternCodec {
+
+    /**
+     * The largest base count that is supported, the grid has 65025 cells.
+     */
+    public static final int MAX_BASE_COUNT = 0xff;
+
+    private static final int NIBBLE_MAX_BASE_COUNT = 4;
+    private static final int NIBBLE_FLAG = 0x80;
+    private static final int VARINT_ESCAPE = 0;
+
+    private PatternCodec() {
+    }
+
+    /**
+     * Encode the pattern to bytes.
+     *
+     * @param baseCount the base count of the grid that the pattern was drawn on
+     * @param pattern   the selected cells
+     * @return the encoded pattern.
+     */
+    public static byte[] encode(int baseCount, SelectedCells pattern) {
+        return encode(baseCount, pattern.toArray());
+    }
+
+    /**
+     * Encode the pattern to bytes.
+     *
+     * @param baseCount the base count of the grid that the pattern was drawn on
+     * @param cells     the indexes of the cells in selection order
+     * @return the encoded pattern.
+     * @throws IllegalArgumentException if the cells are not a valid pattern of the grid.
+     */
+    public static byte[] encode(int baseCount, int[] cells) {
+        checkPattern(baseCount, cells);
+        if (baseCount <= NIBBLE_MAX_BASE_COUNT) {
+            final byte[] data = new byte[1 + ((cells.length + 1) >> 1)];
+            data[0] = (byte) (NIBBLE_FLAG | ((baseCount - 1) << 5) | cells.length);
+            for (int i = 0; i < cells.length; i++) {
+                data[1 + (i >> 1)] |= (i & 1) == 0 ? cells[i] << 4 : cells[i];
+            }
+            return data;
+        }
+
+        final byte[] data = new byte[encodedSize(baseCount, cells)];
+        int offset;
+        if (baseCount < NIBBLE_FLAG) {
+            data[0] = (byte) baseCount;
+            offset = 1;
+        } else {
+            data[0] = VARINT_ESCAPE;
+            offset = writeVarint(data, 1, baseCount);
+        }
+        for (int cell : cells) {
+            offset = writeVarint(data, offset, cell);
+        }
+        return data;
+    }
+
+    /**
+     * Get the base count of the grid that the encoded pattern was drawn on.
+     *
+     * @param data the encoded pattern
+     * @return the base count.
+     * @throws IllegalArgumentException if the data is malformed.
+     */
+    public static int decodeBaseCount(byte[] data) {
+        if (data.length == 0) {
+            throw new IllegalArgumentException("Malformed pattern data");
+        }
+
+        final int header = data[0] & 0xff;
+        if ((header & NIBBLE_FLAG) != 0) {
+            return ((header >> 5) & 0x3) + 1;
+        }
+        if (header != VARINT_ESCAPE) {
+            if (header <= NIBBLE_MAX_BASE_COUNT) {
+                throw new IllegalArgumentException("Malformed pattern data");
+            }
+            return header;
+        }
+
+        final long baseCount = readVarint(data, 1);
+        if (baseCount < NIBBLE_FLAG || baseCount > MAX_BASE_COUNT) {
+            throw new IllegalArgumentException("Malformed pattern data");
+        }
+        return (int) baseCount;
+    }
+
+    /**
+     * Decode the cells of the pattern.
+     *
+     * @param data the encoded pattern
+     * @return the indexes of the cells in selection order.
+     * @throws IllegalArgumentException if the data is malformed.
+     */
+    public static int[] decode(byte[] data) {
+        final int baseCount = decodeBaseCount(data);
+        final int header = data[0] & 0xff;
+        final int[] cells;
+        if ((header & NIBBLE_FLAG) != 0) {
+            final int length = header & 0x1f;
+            if (data.length != 1 + ((length + 1) >> 1)) {
+                throw new IllegalArgumentException("Malformed pattern data");
+            }
+            cells = new int[length];
+            for (int i = 0; i < length; i++) {
+                final int packed = data[1 + (i >> 1)] & 0xff;
+                cells[i] = (i & 1) == 0 ? packed >> 4 : packed & 0xf;
+            }
+            if ((length & 1) != 0 && (data[data.length - 1] & 0xf) != 0) {
+                throw new IllegalArgumentException("Malformed pattern data");
+            }
+        } else {
+            int offset = header != VARINT_ESCAPE ? 1 : 1 + varintSize(baseCount);
+            int length = 0;
+            for (int i = offset; i < data.length; i++) {
+                if ((data[i] & 0x80) == 0) {
+                    length++;
+                }
+            }
+            if ((data[data.length - 1] & 0x80) != 0) {
+                throw new IllegalArgumentException("Malformed pattern data");
+            }
+
+            cells = new int[length];
+            for (int i = 0; i < length; i++) {
+                final long cell = readVarint(data, offset);
+                if (cell > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Malformed pattern data");
+                }
+                cells[i] = (int) cell;
+                offset += varintSize(cells[i]);
+            }
+        }
+
+        try {
+            checkPattern(baseCount, cells);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed pattern data", e);
+        }
+        // Only the shortest form of each value is accepted, so the encoding is unique.
+        if (data.length != encodedSize(baseCount, cells)) {
+            throw new IllegalArgumentException("Malformed pattern data");
+        }
+        return cells;
+    }
+
+    /**
+     * Get the count of the patterns of the grid, including the empty one.
+     *
+     * @param baseCount the base count of the grid
+     * @return the count of the patterns or -1 if it does not fit in a long.
+     */
+    public static long getPatternCount(int baseCount) {
+        final int cellCount = checkBaseCount(baseCount);
+        long count = 0;
+        for (int length = 0; length <= cellCount; length++) {
+            final long lengthCount = getPatternCount(baseCount, length);
+            if (lengthCount < 0 || count > Long.MAX_VALUE - lengthCount) {
+                return -1;
+            }
+            count += lengthCount;
+        }
+        return count;
+    }
+
+    /**
+     * Get the count of the patterns of the specified length.
+     *
+     * @param baseCount the base count of the grid
+     * @param length    the count of the cells of the patterns
+     * @return the count of the patterns or -1 if it does not fit in a long.
+     */
+    public static long getPatternCount(int baseCount, int length) {
+        final int cellCount = checkBaseCount(baseCount);
+        if (length < 0 || length > cellCount) {
+            return 0;
+        }
+        return permutationCount(cellCount, length);
+    }
+
+    /**
+     * Get the rank of the pattern.
+     *
+     * @param baseCount the base count of the grid that the pattern was drawn on
+     * @param cells     the indexes of the cells in selection order
+     * @return the rank of the pattern.
+     * @throws IllegalArgumentException if the cells are not a valid pattern of the grid or the rank does not fit in
+     *                                  a long.
+     */
+    public static long rank(int baseCount, int[] cells) {
+        checkPattern(baseCount, cells);
+        final int cellCount = baseCount * baseCount;
+        final int length = cells.length;
+        final long offset = lengthOffset(cellCount, length);
+        if (offset < 0) {
+            throw new IllegalArgumentException("The rank of the pattern does not fit in a long");
+        }
+
+        final long[] used = new long[(cellCount + 63) >> 6];
+        long rank = 0;
+        for (int i = 0; i < length; i++) {
+            final int cell = cells[i];
+            // The position of the cell among the cells that are not used yet.
+            final int digit = cell - countUsedBelow(used, cell);
+            rank += digit * permutationCount(cellCount - i - 1, length - i - 1);
+            used[cell >> 6] |= 1L << cell;
+        }
+        return offset + rank;
+    }
+
+    /**
+     * Get the pattern of the rank.
+     *
+     * @param baseCount the base count of the grid
+     * @param rank      the rank returned by {@link #rank(int, int[])}
+     * @return the indexes of the cells in selection order.
+     * @throws IllegalArgumentException if the rank is out of range or of a length that {@link #rank(int, int[])}
+     *                                  rejects.
+     */
+    public static int[] unrank(int baseCount, long rank) {
+        final int cellCount = checkBaseCount(baseCount);
+        if (rank < 0) {
+            throw new IllegalArgumentException("Invalid rank: " + rank);
+        }
+
+        int length = 0;
+        long remain = rank;
+        while (true) {
+            if (length > cellCount) {
+                throw new IllegalArgumentException("Invalid rank: " + rank);
+            }
+            final long lengthCount = permutationCount(cellCount, length);
+            if (lengthCount < 0 || remain < lengthCount) {
+                break;
+            }
+            remain -= lengthCount;
+            length++;
+        }
+        // rank() rejects every pattern of a length whose ranks do not all fit in a long.
+        if (lengthOffset(cellCount, length) < 0) {
+            throw new IllegalArgumentException("Invalid rank: " + rank);
+        }
+
+        final long[] used = new long[(cellCount + 63) >> 6];
+        final int[] cells = new int[length];
+        for (int i = 0; i < length; i++) {
+            final long radix = permutationCount(cellCount - i - 1, length - i - 1);
+            int digit = (int) (remain / radix);
+            remain %= radix;
+
+            int cell = 0;
+            while (true) {
+                if ((used[cell >> 6] & (1L << cell)) == 0 && digit-- == 0) {
+                    break;
+                }
+                cell++;
+            }
+            cells[i] = cell;
+            used[cell >> 6] |= 1L << cell;
+        }
+        return cells;
+    }
+
+    /**
+     * Check that the cells are in the grid and no cell is selected twice.
+     */
+    static void checkPattern(int baseCount, int[] cells) {
+        final int cellCount = checkBaseCount(baseCount);
+        if (cells.length > cellCount) {
+            throw new IllegalArgumentException("Too many cells: " + cells.length);
+        }
+
+        final long[] used = new long[(cellCount + 63) >> 6];
+        for (int cell : cells) {
+            if (cell < 0 || cell >= cellCount) {
+                throw new IllegalArgumentException("Invalid cell: " + cell);
+            }
+            if ((used[cell >> 6] & (1L << cell)) != 0) {
+                throw new IllegalArgumentException("Cell selected twice: " + cell);
+            }
+            used[cell >> 6] |= 1L << cell;
+        }
+    }
+
+    private static int checkBaseCount(int baseCount) {
+        if (baseCount <= 0 || baseCount > MAX_BASE_COUNT) {
+            throw new IllegalArgumentException("Invalid base count: " + baseCount);
+        }
+        return baseCount * baseCount;
+    }
+
+    /**
+     * @return the count of the ordered selections of {@code k} of {@code n} cells, or -1 if it does not fit in a
+     * long.
+     */
+    static long permutationCount(int n, int k) {
+        long count = 1;
+        for (int i = 0; i < k; i++) {
+            final int factor = n - i;
+            if (count > Long.MAX_VALUE / factor) {
+                return -1;
+            }
+            count *= factor;
+        }
+        return count;
+    }
+
+    /**
+     * @return the rank of the first pattern of the length, or -1 if the ranks of the length do not fit in a long.
+     */
+    private static long lengthOffset(int cellCount, int length) {
+        long offset = 0;
+        for (int i = 0; i <= length; i++) {
+            final long count = permutationCount(cellCount, i);
+            if (count < 0 || offset > Long.MAX_VALUE - count) {
+                return -1;
+            }
+            if (i < length) {
+                offset += count;
+            }
+        }
+        return offset;
+    }
+
+    private static int countUsedBelow(long[] used, int cell) {
+        int count = 0;
+        final int word = cell >> 6;
+        for (int i = 0; i < word; i++) {
+            count += Long.bitCount(used[i]);
+        }
+        return count + Long.bitCount(used[word] & ((1L << cell) - 1));
+    }
+
+    private static int encodedSize(int baseCount, int[] cells) {
+        if (baseCount <= NIBBLE_MAX_BASE_COUNT) {
+            return 1 + ((cells.length + 1) >> 1);
+        }
+
+        int size = baseCount < NIBBLE_FLAG ? 1 : 1 + varintSize(baseCount);
+        for (int cell : cells) {
+            size += varintSize(cell);
+        }
+        return size;
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    private static int writeVarint(byte[] data, int offset, int value) {
+        while ((value & ~0x7f) != 0) {
+            data[offset++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        data[offset++] = (byte) value;
+        return offset;
+    }
+
+    private static long readVarint(byte[] data, int offset) {
+        long value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (offset >= data.length) {
+                break;
+            }
+            final int b = data[offset++];
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed pattern data");
+    }
+}
@@ -0,0 +1,532 @@
+/*
+ * Copyright (C) 2016 iChengc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cc.library;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Count and enumerate the patterns that can be drawn on a grid. A pattern never selects a cell twice and never
+ * crosses a cell that is not selected yet. The second rule assumes that {@link PatternView#setAutoSelectIntermediate}
+ * is on, so the crossed cell is selected first; with the default the view does not enforce it. Without the second
+ * rule the count of the patterns of length k is simply {@code n! / (n - k)!}, see
+ * {@link PatternCodec#getPatternCount(int, int)}.
+ * <p>
+ * The counts are computed by dynamic programming over the set of the selected cells and the last cell, every state
+ * is counted once instead of walking every pattern. The states of the same length are independent, so they are
+ * split across the threads of the counter.
+ */
+public final class PatternCounter {
+
+    /**
+     * The largest grid whose patterns of all the lengths are counted, a larger grid has too many states.
+     */
+    public static final int MAX_DENSE_CELL_COUNT = 16;
+
+    /**
+     * The largest grid whose short patterns are counted, the selected cells are kept in a long mask.
+     */
+    public static final int MAX_SPARSE_CELL_COUNT = 64;
+
+    /**
+     * The count of the states that a task handles at least, smaller layers are not split.
+     */
+    private static final int MIN_TASK_SIZE = 1 << 10;
+
+    private final int mBaseCount;
+    private final int mCellCount;
+
+    /**
+     * The cells that must be selected before moving from a cell to another, indexed by {@code from * n + to}.
+     */
+    private final long[] mRequiredMasks;
+
+    private int mParallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * @param baseCount the base count of the grid, the grid has at most {@link #MAX_SPARSE_CELL_COUNT} cells.
+     */
+    public PatternCounter(int baseCount) {
+        if (baseCount <= 0 || baseCount * baseCount > MAX_SPARSE_CELL_COUNT) {
+            throw new IllegalArgumentException("Unsupported base count: " + baseCount);
+        }
+
+        mBaseCount = baseCount;
+        mCellCount = baseCount * baseCount;
+        mRequiredMasks = new long[mCellCount * mCellCount];
+        final IntermediateCellTable table = IntermediateCellTable.get(baseCount);
+        for (int from = 0; from < mCellCount; from++) {
+            for (int to = 0; to < mCellCount; to++) {
+                long mask = 0;
+                if (from != to) {
+                    for (int i = 0; i < table.getCount(from, to); i++) {
+                        mask |= 1L << table.getCell(from, to, i);
+                    }
+                }
+                mRequiredMasks[from * mCellCount + to] = mask;
+            }
+        }
+    }
+
+    public int getBaseCount() {
+        return mBaseCount;
+    }
+
+    /**
+     * Set the count of the threads that count the patterns, 1 to count on the calling thread.
+     *
+     * @param parallelism the count of the threads, the count of the processors by default.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("The parallelism must be positive");
+        }
+        mParallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return mParallelism;
+    }
+
+    /**
+     * Check whether the next cell can be selected after the cells of the mask, the last of which is {@code from}.
+     */
+    boolean canMove(long selectedMask, int from, int to) {
+        final long required = mRequiredMasks[from * mCellCount + to];
+        return (selectedMask & (1L << to)) == 0 && (selectedMask & required) == required;
+    }
+
+    /**
+     * Count the patterns of every length, the grid must have at most {@link #MAX_DENSE_CELL_COUNT} cells.
+     *
+     * @return the counts indexed by the length, the count of the empty pattern is 1.
+     */
+    public long[] countByLength() {
+        if (mCellCount > MAX_DENSE_CELL_COUNT) {
+            throw new IllegalStateException("Too many cells to count all the lengths, use countByLength(int)");
+        }
+
+        final ExecutorService executor = createExecutor();
+        try {
+            return countDense(executor);
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Count the patterns up to the specified length.
+     *
+     * @param maxLength the largest length to be counted
+     * @return the counts indexed by the length, the count of the empty pattern is 1.
+     */
+    public long[] countByLength(int maxLength) {
+        maxLength = Math.min(maxLength, mCellCount);
+        if (maxLength < 0) {
+            throw new IllegalArgumentException("Invalid length: " + maxLength);
+        }
+        if (maxLength == mCellCount && mCellCount <= MAX_DENSE_CELL_COUNT) {
+            return countByLength();
+        }
+
+        final ExecutorService executor = createExecutor();
+        try {
+            return countSparse(executor, maxLength);
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Get the total count of the patterns whose length is in the range.
+     *
+     * @param counts    the counts returned by {@link #countByLength()}
+     * @param minLength the smallest length
+     * @param maxLength the largest length
+     * @return the total count.
+     */
+    public static long sum(long[] counts, int minLength, int maxLength) {
+        long sum = 0;
+        for (int length = Math.max(minLength, 0); length <= Math.min(maxLength, counts.length - 1); length++) {
+            sum += counts[length];
+        }
+        return sum;
+    }
+
+    private ExecutorService createExecutor() {
+        return mParallelism > 1 ? Executors.newFixedThreadPool(mParallelism) : null;
+    }
+
+    /**
+     * Count with a table of every state, {@code counts[mask * n + last]} is the count of the patterns that select
+     * the cells of the mask and end at the last cell. The layers of the same length are counted in turn, every
+     * state only reads the states of the previous layer.
+     */
+    private long[] countDense(ExecutorService executor) {
+        final int n = mCellCount;
+        final long[] result = new long[n + 1];
+        result[0] = 1;
+        if (n == 0) {
+            return result;
+        }
+
+        final long[] counts = new long[(1 << n) * n];
+        for (int i = 0; i < n; i++) {
+            counts[(1 << i) * n + i] = 1;
+        }
+        result[1] = n;
+
+        for (int length = 2; length <= n; length++) {
+            final int[] masks = masksOfSize(n, length);
+            final int taskCount = executor == null ? 1
+                    : Math.max(1, Math.min(mParallelism << 2, masks.length / MIN_TASK_SIZE));
+            final List<Callable<Long>> tasks = new ArrayList<Callable<Long>>(taskCount);
+            for (int t = 0; t < taskCount; t++) {
+                final int start = (int) ((long) masks.length * t / taskCount);
+                final int end = (int) ((long) masks.length * (t + 1) / taskCount);
+                tasks.add(new Callable<Long>() {
+                    @Override
+                    public Long call() {
+                        return countDenseRange(counts, masks, start, end);
+                    }
+                });
+            }
+            result[length] = sumAll(executor, tasks);
+        }
+        return result;
+    }
+
+    private long countDenseRange(long[] counts, int[] masks, int start, int end) {
+        final int n = mCellCount;
+        long total = 0;
+        for (int m = start; m < end; m++) {
+            final int mask = masks[m];
+            for (int last = 0; last < n; last++) {
+                if ((mask & (1 << last)) == 0) {
+                    continue;
+                }
+
+                final int previousMask = mask ^ (1 << last);
+                long count = 0;
+                for (int previous = 0; previous < n; previous++) {
+                    if ((previousMask & (1 << previous)) != 0 && canMove(previousMask, previous, last)) {
+                        count += counts[previousMask * n + previous];
+                    }
+                }
+                counts[mask * n + last] = count;
+                total += count;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Count with a map of the reachable masks of the current length only, so the grids that have too many states
+     * for a table can still be counted for the short patterns.
+     */
+    private long[] countSparse(ExecutorService executor, int maxLength) {
+        final int n = mCellCount;
+        final long[] result = new long[maxLength + 1];
+        result[0] = 1;
+        if (maxLength == 0) {
+            return result;
+        }
+
+        Map<Long, long[]> layer = new HashMap<Long, long[]>();
+        for (int i = 0; i < n; i++) {
+            final long[] lastCounts = new long[n];
+            lastCounts[i] = 1;
+            layer.put(1L << i, lastCounts);
+        }
+        result[1] = n;
+
+        for (int length = 2; length <= maxLength; length++) {
+            final List<Map.Entry<Long, long[]>> entries = new ArrayList<Map.Entry<Long, long[]>>(layer.entrySet());
+            final int taskCount = executor == null ? 1
+                    : Math.max(1, Math.min(mParallelism, entries.size() / MIN_TASK_SIZE));
+            final List<Callable<Map<Long, long[]>>> tasks = new ArrayList<Callable<Map<Long, long[]>>>(taskCount);
+            for (int t = 0; t < taskCount; t++) {
+                final int start = (int) ((long) entries.size() * t / taskCount);
+                final int end = (int) ((long) entries.size() * (t + 1) / taskCount);
+                tasks.add(new Callable<Map<Long, long[]>>() {
+                    @Override
+                    public Map<Long, long[]> call() {
+                        return extendSparse(entries, start, end);
+                    }
+                });
+            }
+
+            Map<Long, long[]> next = null;
+            for (Map<Long, long[]> part : invokeAll(executor, tasks)) {
+                if (next == null) {
+                    next = part;
+                    continue;
+                }
+                for (Map.Entry<Long, long[]> entry : part.entrySet()) {
+                    final long[] lastCounts = next.get(entry.getKey());
+                    if (lastCounts == null) {
+                        next.put(entry.getKey(), entry.getValue());
+                    } else {
+                        for (int i = 0; i < n; i++) {
+                            lastCounts[i] += entry.getValue()[i];
+                        }
+                    }
+                }
+            }
+
+            long total = 0;
+            for (long[] lastCounts : next.values()) {
+                for (long count : lastCounts) {
+                    total += count;
+                }
+            }
+            result[length] = total;
+            layer = next;
+        }
+        return result;
+    }
+
+    private Map<Long, long[]> extendSparse(List<Map.Entry<Long, long[]>> entries, int start, int end) {
+        final int n = mCellCount;
+        final Map<Long, long[]> next = new HashMap<Long, long[]>();
+        for (int e = start; e < end; e++) {
+            final long mask = entries.get(e).getKey();
+            final long[] lastCounts = entries.get(e).getValue();
+            for (int last = 0; last < n; last++) {
+                final long count = lastCounts[last];
+                if (count == 0) {
+                    continue;
+                }
+                for (int to = 0; to < n; to++) {
+                    if (!canMove(mask, last, to)) {
+                        continue;
+                    }
+                    final Long nextMask = mask | (1L << to);
+                    long[] nextCounts = next.get(nextMask);
+                    if (nextCounts == null) {
+                        nextCounts = new long[n];
+                        next.put(nextMask, nextCounts);
+                    }
+                    nextCounts[to] += count;
+                }
+            }
+        }
+        return next;
+    }
+
+    private static long sumAll(ExecutorService executor, List<Callable<Long>> tasks) {
+        long sum = 0;
+        for (Long part : invokeAll(executor, tasks)) {
+            sum += part;
+        }
+        return sum;
+    }
+
+    private static <T> List<T> invokeAll(ExecutorService executor, List<Callable<T>> tasks) {
+        final List<T> results = new ArrayList<T>(tasks.size());
+        try {
+            if (executor == null || tasks.size() == 1) {
+                for (Callable<T> task : tasks) {
+                    results.add(task.call());
+                }
+                return results;
+            }
+
+            for (Future<T> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while counting the patterns", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to count the patterns", e.getCause());
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to count the patterns", e);
+        }
+    }
+
+    /**
+     * Get all the masks of {@code n} bits that have {@code size} bits set, in increasing order.
+     */
+    private static int[] masksOfSize(int n, int size) {
+        long binomial = 1;
+        for (int i = 0; i < size; i++) {
+            binomial = binomial * (n - i) / (i + 1);
+        }
+
+        final int[] masks = new int[(int) binomial];
+        int mask = (1 << size) - 1;
+        for (int i = 0; i < masks.length; i++) {
+            masks[i] = mask;
+            // The next larger integer with the same count of set bits.
+            final int lowest = mask & -mask;
+            final int ripple = mask + lowest;
+            mask = (((ripple ^ mask) >>> 2) / lowest) | ripple;
+        }
+        return masks;
+    }
+
+    /**
+     * Enumerate the patterns lazily, in lexicographic order.
+     *
+     * @param minLength the smallest length of the patterns
+     * @param maxLength the largest length of the patterns
+     * @return the iterator of the patterns, every pattern is a new array.
+     */
+    public Iterator<int[]> iterator(int minLength, int maxLength) {
+        return new PatternIterator(-1, minLength, maxLength);
+    }
+
+    /**
+     * Enumerate the patterns that start at the specified cell lazily, in lexicographic order. The patterns can be
+     * split across threads by the first cell.
+     *
+     * @param firstCell the first cell of the patterns
+     * @param minLength the smallest length of the patterns
+     * @param maxLength the largest length of the patterns
+     * @return the iterator of the patterns, every pattern is a new array.
+     */
+    public Iterator<int[]> iterator(int firstCell, int minLength, int maxLength) {
+        if (firstCell < 0 || firstCell >= mCellCount) {
+            throw new IllegalArgumentException("Invalid cell: " + firstCell);
+        }
+        return new PatternIterator(firstCell, minLength, maxLength);
+    }
+
+    /**
+     * Walk the patterns depth first with an explicit stack, the next pattern is only found when it is requested.
+     */
+    private final class PatternIterator implements Iterator<int[]> {
+        private final int mFirstCell;
+        private final int mMinLength;
+        private final int mMaxLength;
+        private final int[] mCells;
+        private int mSize;
+        private long mMask;
+        private boolean mHasNext;
+
+        PatternIterator(int firstCell, int minLength, int maxLength) {
+            mFirstCell = firstCell;
+            mMinLength = Math.max(minLength, 1);
+            mMaxLength = Math.min(maxLength, mCellCount);
+            mCells = new int[mCellCount];
+            if (mMinLength <= mMaxLength) {
+                mCells[0] = firstCell >= 0 ? firstCell : 0;
+                mSize = 1;
+                mMask = 1L << mCells[0];
+                mHasNext = mSize >= mMinLength || advance();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return mHasNext;
+        }
+
+        @Override
+        public int[] next() {
+            if (!mHasNext) {
+                throw new NoSuchElementException();
+            }
+            final int[] pattern = new int[mSize];
+            System.arraycopy(mCells, 0, pattern, 0, mSize);
+            mHasNext = advance();
+            return pattern;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Move to the next pattern whose length is in range.
+         *
+         * @return false if there is no more pattern.
+         */
+        private boolean advance() {
+            boolean isDescending = mSize < mMaxLength;
+            while (true) {
+                if (isDescending) {
+                    final int to = nextMove(mCells[mSize - 1], 0);
+                    if (to >= 0) {
+                        push(to);
+                        if (mSize >= mMinLength) {
+                            return true;
+                        }
+                        isDescending = mSize < mMaxLength;
+                        continue;
+                    }
+                    isDescending = false;
+                }
+
+                // Replace the last cell with the next candidate.
+                final int last = pop();
+                if (mSize == 0) {
+                    if (mFirstCell >= 0 || last + 1 >= mCellCount) {
+                        return false;
+                    }
+                    push(last + 1);
+                } else {
+                    final int candidate = nextMove(mCells[mSize - 1], last + 1);
+                    if (candidate < 0) {
+                        continue;
+                    }
+                    push(candidate);
+                }
+
+                if (mSize >= mMinLength) {
+                    return true;
+                }
+                isDescending = mSize < mMaxLength;
+            }
+        }
+
+        private int nextMove(int from, int start) {
+            for (int to = start; to < mCellCount; to++) {
+                if (canMove(mMask, from, to)) {
+                    return to;
+                }
+            }
+            return -1;
+        }
+
+        private void push(int cell) {
+            mCells[mSize++] = cell;
+            mMask |= 1L << cell;
+        }
+
+        private int pop() {
+            final int cell = mCells[--mSize];
+            mMask &= ~(1L << cell);
+            return cell;
+        }
+    }
+}
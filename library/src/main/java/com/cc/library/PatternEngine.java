@@ -0,0 +1,449 @@
+/*
+ * Copyright (C) 2016 iChengc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cc.library;
+
+import java.util.Arrays;
+
+/**
+ * The layout and the selection state of the pattern grid, shared by {@link PatternView} and
+ * {@link PatternSurfaceView}. It does not depend on the Android framework, the views feed it with the touch samples
+ * and draw its state. It can be driven without a view as well, e.g. to replay recorded gestures on a plain JVM:
+ * <pre>
+ * PatternEngine engine = new PatternEngine(3);
+ * engine.layout(width, height, padding);
+ * engine.touchDown(x, y);
+ * engine.touchMove(x, y); // for every touch sample
+ * SelectedCells result = engine.touchUp(x, y);
+ * </pre>
+ * The engine is not thread safe.
+ */
+public final class PatternEngine {
+
+    /**
+     * The interface definition for callback when a cell is selected.
+     */
+    public interface OnCellSelectedListener {
+        /**
+         * @param index the index of the selected cell, it has been added to the selected cells
+         * @param x     the x coordinate position of the touch that selected the cell
+         * @param y     the y coordinate position of the touch that selected the cell
+         */
+        void onCellSelected(int index, float x, float y);
+    }
+
+    private final CellGeometry mGeometry;
+
+    /**
+     * The base count of the cell, the real count of cell is {@code mCellBaseCount} * {@code mCellBaseCount}
+     */
+    private int mCellBaseCount;
+
+    /**
+     * The cell selected status.
+     */
+    private boolean[] mCellStatus;
+
+    /**
+     * The selected cells
+     */
+    private SelectedCells mSelectedCells;
+
+    /**
+     * Specify whether the cells between two selected cells are selected automatically.
+     */
+    private boolean mIsAutoSelectIntermediate;
+    private IntermediateCellTable mIntermediateCellTable;
+
+    /**
+     * The radius and the spacing that are specified by the attributes, the real ones are calculated from them
+     * when the size of the view changes. -1 radius means it is calculated from the size.
+     */
+    private int mPreferredCellRadius = -1;
+    private int mPreferredSpacing;
+
+    /**
+     * The smallest radius of the cells, nothing is laid out if there is no room for it.
+     */
+    private static final int MIN_CELL_RADIUS = 1;
+
+    /**
+     * The size and padding that the cells were laid out for.
+     */
+    private int mLayoutWidth, mLayoutHeight, mLayoutPadding;
+    private boolean mIsLayoutDirty = true;
+
+    /**
+     * The last touch sample that has been hit-tested, the segment from it to the next sample is tested against the
+     * cells so a fast swipe never skips a cell.
+     */
+    private float mLastSampleX, mLastSampleY;
+    private boolean mHasLastSample;
+
+    private OnCellSelectedListener mOnCellSelectedListener;
+
+    /**
+     * Specify whether a gesture started by {@link #touchDown(float, float)} has not finished yet.
+     */
+    private boolean mIsGestureActive;
+
+    public PatternEngine(int baseCount) {
+        mGeometry = new CellGeometry();
+        mSelectedCells = new SelectedCells(baseCount * baseCount);
+        setCellBaseCount(baseCount);
+    }
+
+    public void setOnCellSelectedListener(OnCellSelectedListener listener) {
+        mOnCellSelectedListener = listener;
+    }
+
+    CellGeometry getGeometry() {
+        return mGeometry;
+    }
+
+    /**
+     * Release the resources that the engine shares with the identical grids, e.g. when its view is detached or a
+     * headless engine is not used any more. They are acquired again by the next hit test.
+     */
+    public void releaseResources() {
+        mGeometry.releaseResources();
+    }
+
+    public SelectedCells getSelectedCells() {
+        return mSelectedCells;
+    }
+
+    public boolean isCellSelected(int index) {
+        return mCellStatus[index];
+    }
+
+    public int getCellBaseCount() {
+        return mCellBaseCount;
+    }
+
+    public int getCellCount() {
+        return mCellStatus.length;
+    }
+
+    /**
+     * Set base cell count, the selection is cleared and the cells must be laid out again.
+     *
+     * @param count the base cell count.
+     */
+    public void setCellBaseCount(int count) {
+        mCellBaseCount = count;
+        mCellStatus = new boolean[count * count];
+        mSelectedCells.clear();
+        mSelectedCells.ensureCapacity(mCellStatus.length);
+        mHasLastSample = false;
+        if (mIsAutoSelectIntermediate) {
+            mIntermediateCellTable = IntermediateCellTable.get(count);
+        }
+        mIsLayoutDirty = true;
+    }
+
+    public void setPreferredCellRadius(int radius) {
+        mPreferredCellRadius = radius;
+        mIsLayoutDirty = true;
+    }
+
+    public void setPreferredSpacing(int spacing) {
+        mPreferredSpacing = spacing;
+        mIsLayoutDirty = true;
+    }
+
+    public float getHitRadiusScale() {
+        return mGeometry.getHitRadiusScale();
+    }
+
+    /**
+     * Set the scale of the radius within which a touch selects a cell, relative to the cell radius.
+     *
+     * @param scale the scale, 1 by default.
+     */
+    public void setHitRadiusScale(float scale) {
+        if (scale <= 0) {
+            throw new IllegalArgumentException("The hit radius scale must be positive");
+        }
+        mGeometry.setHitRadiusScale(scale);
+    }
+
+    /**
+     * @param index the index of the cell
+     * @return the x coordinate position of the center of the cell, valid after the cells are laid out.
+     */
+    public float getCellCenterX(int index) {
+        return mGeometry.getCenterX(index);
+    }
+
+    /**
+     * @param index the index of the cell
+     * @return the y coordinate position of the center of the cell, valid after the cells are laid out.
+     */
+    public float getCellCenterY(int index) {
+        return mGeometry.getCenterY(index);
+    }
+
+    public boolean isLaidOut() {
+        return !mIsLayoutDirty;
+    }
+
+    public boolean isAutoSelectIntermediate() {
+        return mIsAutoSelectIntermediate;
+    }
+
+    public void setAutoSelectIntermediate(boolean autoSelect) {
+        mIsAutoSelectIntermediate = autoSelect;
+        mIntermediateCellTable = autoSelect ? IntermediateCellTable.get(mCellBaseCount) : null;
+    }
+
+    /**
+     * Layout the cells in the view, nothing is done if the size has not changed since the last layout. If the
+     * preferred radius does not fit, the radius is calculated from the size. If the preferred spacing would make
+     * the cells smaller than the spacing, the spacing shrinks with the cells. If there is no room even for the
+     * smallest cells, the engine is not laid out until the size changes.
+     *
+     * @param width   the width of the view
+     * @param height  the height of the view
+     * @param padding the padding of the view
+     * @return true if the cells have been laid out again.
+     */
+    public boolean layout(int width, int height, int padding) {
+        if (mCellBaseCount <= 0) {
+            return false;
+        }
+
+        final int size = Math.min(height, width);
+        if (size <= 0 || !mIsLayoutDirty && width == mLayoutWidth && height == mLayoutHeight
+                && padding == mLayoutPadding) {
+            return false;
+        }
+
+        final int available = size - (padding << 1);
+        final int gaps = mCellBaseCount - 1;
+        int cellRadius = mPreferredCellRadius;
+        int spacing = mPreferredSpacing;
+        if (cellRadius != -1 && (cellRadius << 1) * mCellBaseCount > available) {
+            cellRadius = -1;
+        }
+
+        final int centerOffset;
+        if (cellRadius == -1) {
+            cellRadius = (available - spacing * gaps) / (mCellBaseCount << 1);
+            if (gaps > 0 && cellRadius << 1 < spacing) {
+                // Shrink the spacing to the diameter of the cells rather than squeeze the cells, and drop it if
+                // even that is too much.
+                cellRadius = available / (((mCellBaseCount << 1) - 1) << 1);
+                if (cellRadius < MIN_CELL_RADIUS) {
+                    cellRadius = available / (mCellBaseCount << 1);
+                }
+                spacing = Math.min(spacing, (available - (cellRadius << 1) * mCellBaseCount) / gaps);
+            }
+            centerOffset = size == height ? ((width - height) >> 1) : 0;
+        } else {
+            final int cellsUsedSpace = (cellRadius << 1) * mCellBaseCount;
+            final int remainSpacing = available - cellsUsedSpace;
+            if (remainSpacing - spacing * gaps < 0) {
+                spacing = remainSpacing / gaps;
+            }
+
+            centerOffset = ((width - cellsUsedSpace - spacing * gaps) >> 1) - padding;
+        }
+        if (cellRadius < MIN_CELL_RADIUS) {
+            mIsLayoutDirty = true;
+            return false;
+        }
+
+        mLayoutWidth = width;
+        mLayoutHeight = height;
+        mLayoutPadding = padding;
+        mIsLayoutDirty = false;
+        mGeometry.layout(mCellBaseCount, padding + centerOffset, padding, cellRadius, spacing);
+        return true;
+    }
+
+    /**
+     * Get index of the cell that located in the specified position.
+     *
+     * @param x the x coordinate position
+     * @param y the y coordinate position
+     * @return -1 if no cell located in this position otherwise return the index of the cell.
+     */
+    public int getCellIndex(float x, float y) {
+        if (mIsLayoutDirty) {
+            return -1;
+        }
+        return mGeometry.getCellIndex(x, y);
+    }
+
+    /**
+     * Hit-test the touch sample and the segment from the previous sample to it.
+     *
+     * @param x the x coordinate position
+     * @param y the y coordinate position
+     */
+    public void processTouchSample(float x, float y) {
+        if (mHasLastSample) {
+            selectCellsOnSegment(mLastSampleX, mLastSampleY, x, y);
+        }
+
+        final int touchCellIndex = getCellIndex(x, y);
+        if (touchCellIndex != -1 && !mCellStatus[touchCellIndex]) {
+            selectCell(touchCellIndex, x, y);
+        }
+        mLastSampleX = x;
+        mLastSampleY = y;
+        mHasLastSample = true;
+    }
+
+    /**
+     * Start a gesture, the selection of the previous gesture is cleared.
+     *
+     * @param x the x coordinate position
+     * @param y the y coordinate position
+     */
+    public void touchDown(float x, float y) {
+        reset();
+        mIsGestureActive = true;
+        processTouchSample(x, y);
+    }
+
+    /**
+     * Continue the gesture, nothing is done if no gesture is started.
+     *
+     * @param x the x coordinate position
+     * @param y the y coordinate position
+     */
+    public void touchMove(float x, float y) {
+        if (mIsGestureActive) {
+            processTouchSample(x, y);
+        }
+    }
+
+    /**
+     * Finish the gesture.
+     *
+     * @param x the x coordinate position
+     * @param y the y coordinate position
+     * @return the selected cells, they are valid until the next gesture starts.
+     */
+    public SelectedCells touchUp(float x, float y) {
+        if (mIsGestureActive) {
+            processTouchSample(x, y);
+            mIsGestureActive = false;
+        }
+        return mSelectedCells;
+    }
+
+    /**
+     * @return true if a gesture is started and not finished yet.
+     */
+    public boolean isGestureActive() {
+        return mIsGestureActive;
+    }
+
+    /**
+     * Select all the unselected cells whose circle intersects the segment, in the order they are crossed.
+     */
+    private void selectCellsOnSegment(float fromX, float fromY, float toX, float toY) {
+        final float deltaX = toX - fromX;
+        final float deltaY = toY - fromY;
+        final float lengthSquare = deltaX * deltaX + deltaY * deltaY;
+        if (lengthSquare == 0 || mIsLayoutDirty) {
+            return;
+        }
+
+        final float radiusSquare = mGeometry.getHitRadius() * mGeometry.getHitRadius();
+        // Only the cells whose rows and columns the bounds of the segment span can be crossed.
+        final int baseCount = mGeometry.getBaseCount();
+        final int firstColumn = mGeometry.getFirstLineInSpan(Math.min(fromX, toX) - mGeometry.getLeft());
+        final int lastColumn = mGeometry.getLastLineInSpan(Math.max(fromX, toX) - mGeometry.getLeft());
+        final int firstRow = mGeometry.getFirstLineInSpan(Math.min(fromY, toY) - mGeometry.getTop());
+        final int lastRow = mGeometry.getLastLineInSpan(Math.max(fromY, toY) - mGeometry.getTop());
+        while (true) {
+            int nearestIndex = -1;
+            float nearestProjection = Float.MAX_VALUE;
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int i = row * baseCount + firstColumn; i <= row * baseCount + lastColumn; i++) {
+                    if (mCellStatus[i]) {
+                        continue;
+                    }
+
+                    final float centerX = mGeometry.getCenterX(i);
+                    final float centerY = mGeometry.getCenterY(i);
+                    // The position of the point on the segment that is closest to the center of the cell.
+                    float projection = ((centerX - fromX) * deltaX + (centerY - fromY) * deltaY) / lengthSquare;
+                    projection = Math.max(0, Math.min(1, projection));
+                    final float distanceX = fromX + projection * deltaX - centerX;
+                    final float distanceY = fromY + projection * deltaY - centerY;
+                    if (distanceX * distanceX + distanceY * distanceY <= radiusSquare
+                            && projection < nearestProjection) {
+                        nearestIndex = i;
+                        nearestProjection = projection;
+                    }
+                }
+            }
+
+            if (nearestIndex == -1) {
+                return;
+            }
+            selectCell(nearestIndex, fromX + nearestProjection * deltaX, fromY + nearestProjection * deltaY);
+        }
+    }
+
+    private void selectCell(int index, float x, float y) {
+        if (mIsAutoSelectIntermediate && !mSelectedCells.isEmpty()) {
+            final int lastIndex = mSelectedCells.getLast();
+            final int count = mIntermediateCellTable.getCount(lastIndex, index);
+            for (int i = 0; i < count; i++) {
+                final int intermediateIndex = mIntermediateCellTable.getCell(lastIndex, index, i);
+                if (!mCellStatus[intermediateIndex]) {
+                    addSelectedCell(intermediateIndex, x, y);
+                }
+            }
+        }
+        addSelectedCell(index, x, y);
+    }
+
+    private void addSelectedCell(int index, float x, float y) {
+        mCellStatus[index] = true;
+        mSelectedCells.add(index);
+        if (mOnCellSelectedListener != null) {
+            mOnCellSelectedListener.onCellSelected(index, x, y);
+        }
+    }
+
+    /**
+     * Restore the selected cells, e.g. from the saved state of the view.
+     *
+     * @param cells the selected cells in selection order
+     */
+    public void restore(int[] cells) {
+        reset();
+        for (int cell : cells) {
+            if (cell >= 0 && cell < mCellStatus.length && !mCellStatus[cell]) {
+                mCellStatus[cell] = true;
+                mSelectedCells.add(cell);
+            }
+        }
+    }
+
+    public void reset() {
+        mIsGestureActive = false;
+        mSelectedCells.clear();
+        mHasLastSample = false;
+        Arrays.fill(mCellStatus, false);
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2016 iChengc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cc.library;
+
+/**
+ * The performance counters of a {@link PatternView}, set by {@link PatternView#setMetrics(PatternMetrics)}. The
+ * frame counters accumulate until {@link #reset()}, the gesture counters are cleared when a gesture starts. The
+ * durations are measured by {@link System#nanoTime()}.
+ * <p>
+ * The counters are updated and the listener is called on the main thread. Nothing is measured while no metrics are
+ * set to the view.
+ */
+public final class PatternMetrics {
+
+    /**
+     * The interface definition for callbacks when the counters are updated, e.g. to feed them into telemetry.
+     */
+    public interface Listener {
+        /**
+         * Called after every frame is drawn.
+         *
+         * @param metrics the metrics
+         */
+        void onFrame(PatternMetrics metrics);
+
+        /**
+         * Called after the result of a gesture is known.
+         *
+         * @param metrics the metrics
+         */
+        void onGesture(PatternMetrics metrics);
+    }
+
+    private Listener mListener;
+
+    private long mFrameCount;
+    private long mLastFrameNanos;
+    private long mMaxFrameNanos;
+    private long mTotalFrameNanos;
+    private int mLastFrameDrawCalls;
+    private long mTotalDrawCalls;
+
+    private long mGestureCount;
+    private int mInvalidateCount;
+    private int mTouchEventCount;
+    private int mTouchSampleCount;
+    private long mHitTestNanos;
+    private long mMaxHitTestNanos;
+    private long mUpTimeNanos;
+    private long mResultLatencyNanos = -1;
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Clear all the counters.
+     */
+    public void reset() {
+        mFrameCount = 0;
+        mLastFrameNanos = 0;
+        mMaxFrameNanos = 0;
+        mTotalFrameNanos = 0;
+        mLastFrameDrawCalls = 0;
+        mTotalDrawCalls = 0;
+        mGestureCount = 0;
+        onGestureStart();
+    }
+
+    void onFrame(long nanos, int drawCalls) {
+        mFrameCount++;
+        mLastFrameNanos = nanos;
+        mMaxFrameNanos = Math.max(mMaxFrameNanos, nanos);
+        mTotalFrameNanos += nanos;
+        mLastFrameDrawCalls = drawCalls;
+        mTotalDrawCalls += drawCalls;
+        if (mListener != null) {
+            mListener.onFrame(this);
+        }
+    }
+
+    void onGestureStart() {
+        mInvalidateCount = 0;
+        mTouchEventCount = 0;
+        mTouchSampleCount = 0;
+        mHitTestNanos = 0;
+        mMaxHitTestNanos = 0;
+        mUpTimeNanos = 0;
+        mResultLatencyNanos = -1;
+    }
+
+    void onInvalidate() {
+        mInvalidateCount++;
+    }
+
+    void onTouchEvent() {
+        mTouchEventCount++;
+    }
+
+    void onHitTest(long nanos) {
+        mTouchSampleCount++;
+        mHitTestNanos += nanos;
+        mMaxHitTestNanos = Math.max(mMaxHitTestNanos, nanos);
+    }
+
+    void onUp(long timeNanos) {
+        mUpTimeNanos = timeNanos;
+    }
+
+    /**
+     * Called when the result of the gesture is known, or right after the finger lifts if there is no listener.
+     *
+     * @param hasResult true if a listener has returned the result.
+     */
+    void onGestureEnd(boolean hasResult) {
+        mResultLatencyNanos = hasResult ? System.nanoTime() - mUpTimeNanos : -1;
+        mGestureCount++;
+        if (mListener != null) {
+            mListener.onGesture(this);
+        }
+    }
+
+    /**
+     * @return the count of the frames drawn.
+     */
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * @return the duration of the last {@code onDraw}, in nanoseconds.
+     */
+    public long getLastFrameNanos() {
+        return mLastFrameNanos;
+    }
+
+    /**
+     * @return the longest duration of {@code onDraw}, in nanoseconds.
+     */
+    public long getMaxFrameNanos() {
+        return mMaxFrameNanos;
+    }
+
+    /**
+     * @return the average duration of {@code onDraw}, in nanoseconds.
+     */
+    public long getAverageFrameNanos() {
+        return mFrameCount == 0 ? 0 : mTotalFrameNanos / mFrameCount;
+    }
+
+    /**
+     * @return the count of the draw calls issued by the last frame, including the ones into the offscreen layers.
+     */
+    public int getLastFrameDrawCalls() {
+        return mLastFrameDrawCalls;
+    }
+
+    public long getTotalDrawCalls() {
+        return mTotalDrawCalls;
+    }
+
+    /**
+     * @return the count of the gestures whose result is known.
+     */
+    public long getGestureCount() {
+        return mGestureCount;
+    }
+
+    /**
+     * @return the count of the invalidations requested during the current gesture.
+     */
+    public int getInvalidateCount() {
+        return mInvalidateCount;
+    }
+
+    /**
+     * @return the count of the touch events received during the current gesture.
+     */
+    public int getTouchEventCount() {
+        return mTouchEventCount;
+    }
+
+    /**
+     * @return the count of the touch samples hit-tested during the current gesture, including the historical ones.
+     */
+    public int getTouchSampleCount() {
+        return mTouchSampleCount;
+    }
+
+    /**
+     * @return the total time of hit-testing the touch samples of the current gesture, in nanoseconds.
+     */
+    public long getHitTestNanos() {
+        return mHitTestNanos;
+    }
+
+    /**
+     * @return the longest time of hit-testing a touch sample of the current gesture, in nanoseconds.
+     */
+    public long getMaxHitTestNanos() {
+        return mMaxHitTestNanos;
+    }
+
+    /**
+     * @return the time from the finger lifting to the listener returning the result, in nanoseconds, or -1 if there
+     * is no result.
+     */
+    public long getResultLatencyNanos() {
+        return mResultLatencyNanos;
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2016 iChengc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cc.library;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A process-wide pool of the render resources that identical pattern views can share: the cell sprites, the arrow
+ * shapes, the idle layers and the hit-test tables. A resource is keyed by what it is built from, e.g. the radius,
+ * the stroke width and the colors, so fifty identical views cost about the memory of one.
+ * <p>
+ * The resources are reference counted. A view acquires them when it is laid out and releases them when it is
+ * detached. The released resources are kept for reuse, and the least recently used ones are evicted once the
+ * memory of all the resources exceeds the budget. The resources in use are never evicted, so the budget may be
+ * exceeded while they are.
+ * <p>
+ * The pool is thread safe.
+ */
+public final class PatternResourcePool {
+
+    public static final long DEFAULT_MEMORY_BUDGET = 4 * 1024 * 1024;
+
+    static final int TYPE_SPRITES = 1;
+    static final int TYPE_ARROWS = 2;
+    static final int TYPE_IDLE_LAYER = 3;
+    static final int TYPE_HIT_TABLE = 4;
+
+    private static final PatternResourcePool sDefault = new PatternResourcePool(DEFAULT_MEMORY_BUDGET);
+
+    /**
+     * A shared resource. It must not be modified once it is in the pool, except for lazily built parts that are
+     * guarded by the resource itself.
+     */
+    abstract static class Resource {
+        private int mRefCount;
+
+        /**
+         * @return the estimated memory of the resource in bytes.
+         */
+        abstract long getSize();
+
+        /**
+         * Called when the resource is evicted, it is not used any more.
+         */
+        void recycle() {
+        }
+    }
+
+    /**
+     * Build a resource that is missing from the pool.
+     */
+    interface Loader<T extends Resource> {
+        T load();
+    }
+
+    /**
+     * The key of a resource, its type followed by the values it is built from.
+     */
+    static final class Key {
+        private final int[] mValues;
+        private final int mHash;
+
+        Key(int... values) {
+            mValues = values;
+            mHash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(mValues, ((Key) o).mValues);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+    }
+
+    /**
+     * All the resources from the least recently acquired to the most recently acquired one.
+     */
+    private final LinkedHashMap<Key, Resource> mResources = new LinkedHashMap<Key, Resource>(16, 0.75f, true);
+
+    private long mMemoryBudget;
+    private long mSize;
+    private int mHitCount;
+    private int mMissCount;
+    private int mEvictionCount;
+
+    /**
+     * @param memoryBudget the memory that the resources may take in bytes
+     */
+    public PatternResourcePool(long memoryBudget) {
+        setMemoryBudget(memoryBudget);
+    }
+
+    /**
+     * @return the pool that the views share.
+     */
+    public static PatternResourcePool getDefault() {
+        return sDefault;
+    }
+
+    /**
+     * Set the memory that the resources may take, the least recently used resources that are not in use are evicted
+     * to fit in.
+     *
+     * @param bytes the budget in bytes.
+     */
+    public synchronized void setMemoryBudget(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("Invalid memory budget: " + bytes);
+        }
+        mMemoryBudget = bytes;
+        trimToBudget();
+    }
+
+    public synchronized long getMemoryBudget() {
+        return mMemoryBudget;
+    }
+
+    /**
+     * @return the estimated memory of all the resources in bytes, including the ones in use.
+     */
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    /**
+     * @return the count of the resources, including the ones in use.
+     */
+    public synchronized int getResourceCount() {
+        return mResources.size();
+    }
+
+    /**
+     * @return the count of the acquisitions that found the resource in the pool.
+     */
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return the count of the acquisitions that built the resource.
+     */
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    public synchronized int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * Evict all the resources that are not in use, e.g. when the system is low on memory.
+     */
+    public synchronized void evictUnused() {
+        evict(0);
+    }
+
+    /**
+     * Get the resource of the key, it is built by the loader if it is missing. Every call must be balanced by
+     * {@link #release(Resource)}.
+     * <p>
+     * The loader runs outside the lock of the pool, so a slow build does not block the other views. If two threads
+     * build the same resource at once, the one that is inserted first wins and the other one is recycled.
+     *
+     * @param key    the key of the resource
+     * @param loader builds the resource if it is missing
+     * @return the resource.
+     */
+    @SuppressWarnings("unchecked")
+    <T extends Resource> T acquire(Key key, Loader<T> loader) {
+        synchronized (this) {
+            final Resource resource = mResources.get(key);
+            if (resource != null) {
+                mHitCount++;
+                resource.mRefCount++;
+                return (T) resource;
+            }
+        }
+
+        final Resource loaded = loader.load();
+        Resource resource;
+        synchronized (this) {
+            resource = mResources.get(key);
+            if (resource == null) {
+                mMissCount++;
+                resource = loaded;
+                mResources.put(key, resource);
+                mSize += resource.getSize();
+            } else {
+                mHitCount++;
+            }
+            resource.mRefCount++;
+            trimToBudget();
+        }
+        if (resource != loaded) {
+            loaded.recycle();
+        }
+        return (T) resource;
+    }
+
+    /**
+     * Release a resource acquired by {@link #acquire(Key, Loader)}, it must not be used afterwards.
+     *
+     * @param resource the resource
+     */
+    synchronized void release(Resource resource) {
+        if (resource.mRefCount <= 0) {
+            throw new IllegalStateException("The resource is not acquired");
+        }
+        if (--resource.mRefCount == 0) {
+            trimToBudget();
+        }
+    }
+
+    private void trimToBudget() {
+        evict(mMemoryBudget);
+    }
+
+    private void evict(long budget) {
+        for (Iterator<Resource> it = mResources.values().iterator(); mSize > budget && it.hasNext(); ) {
+            final Resource resource = it.next();
+            if (resource.mRefCount == 0) {
+                it.remove();
+                mSize -= resource.getSize();
+                mEvictionCount++;
+                resource.recycle();
+            }
+        }
+    }
+}
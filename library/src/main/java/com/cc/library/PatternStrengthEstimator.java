@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2016 iChengc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cc.library;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Estimate how hard a pattern is to guess, in bits. Every cell adds the bits of choosing it among the remaining
+ * cells, weighted by how predictable the move is: continuing in the same direction or moving to a neighbour is
+ * cheap, a knight move or a move over an already selected cell is worth more. The first cell is weighted by how
+ * often people start there, the corners and especially the top-left one are the most popular.
+ * <p>
+ * The weights of every move are precomputed per grid size, so a {@link Meter} adds a cell with a few table lookups
+ * and without allocation, it can be updated whenever a cell is selected.
+ */
+public final class PatternStrengthEstimator {
+
+    public static final int STRENGTH_WEAK = 0;
+    public static final int STRENGTH_FAIR = 1;
+    public static final int STRENGTH_STRONG = 2;
+
+    /**
+     * The bits that a pattern needs at least to be fair or strong.
+     */
+    public static final float FAIR_BITS = 12f;
+    public static final float STRONG_BITS = 20f;
+
+    private static final int FLAG_ADJACENT = 1;
+    private static final int FLAG_KNIGHT = 1 << 1;
+    private static final int FLAG_CROSSING = 1 << 2;
+
+    private static final float STRAIGHT_WEIGHT = 0.4f;
+    private static final float ADJACENT_WEIGHT = 0.8f;
+    private static final float KNIGHT_BONUS = 1f;
+    private static final float OVERLAP_BONUS = 1f;
+
+    /**
+     * The relative popularity of the first cell.
+     */
+    private static final float CORNER_POPULARITY = 3f;
+    private static final float TOP_LEFT_POPULARITY = 6f;
+    private static final float EDGE_POPULARITY = 1.5f;
+    private static final float INNER_POPULARITY = 1f;
+
+    private static final Map<Integer, PatternStrengthEstimator> sEstimators =
+            new HashMap<Integer, PatternStrengthEstimator>();
+
+    private final int mBaseCount;
+    private final int mCellCount;
+    private final IntermediateCellTable mIntermediateCellTable;
+
+    /**
+     * The bits of starting at every cell.
+     */
+    private final float[] mStartBits;
+
+    /**
+     * The log2 of every count of the remaining cells.
+     */
+    private final float[] mLog2;
+
+    /**
+     * The reduced direction and the flags of every move, indexed by {@code from * n + to}.
+     */
+    private final int[] mDirections;
+    private final byte[] mFlags;
+
+    private PatternStrengthEstimator(int baseCount) {
+        mBaseCount = baseCount;
+        mCellCount = baseCount * baseCount;
+        mIntermediateCellTable = IntermediateCellTable.get(baseCount);
+
+        mLog2 = new float[mCellCount + 1];
+        for (int i = 1; i <= mCellCount; i++) {
+            mLog2[i] = (float) (Math.log(i) / Math.log(2));
+        }
+
+        final float[] popularity = new float[mCellCount];
+        float totalPopularity = 0;
+        for (int i = 0; i < mCellCount; i++) {
+            final int row = i / baseCount;
+            final int column = i % baseCount;
+            final boolean isRowEdge = row == 0 || row == baseCount - 1;
+            final boolean isColumnEdge = column == 0 || column == baseCount - 1;
+            if (i == 0) {
+                popularity[i] = TOP_LEFT_POPULARITY;
+            } else if (isRowEdge && isColumnEdge) {
+                popularity[i] = CORNER_POPULARITY;
+            } else if (isRowEdge || isColumnEdge) {
+                popularity[i] = EDGE_POPULARITY;
+            } else {
+                popularity[i] = INNER_POPULARITY;
+            }
+            totalPopularity += popularity[i];
+        }
+        mStartBits = new float[mCellCount];
+        for (int i = 0; i < mCellCount; i++) {
+            mStartBits[i] = (float) (Math.log(totalPopularity / popularity[i]) / Math.log(2));
+        }
+
+        mDirections = new int[mCellCount * mCellCount];
+        mFlags = new byte[mCellCount * mCellCount];
+        final int deltaSpan = (baseCount << 1) - 1;
+        for (int from = 0; from < mCellCount; from++) {
+            for (int to = 0; to < mCellCount; to++) {
+                final int deltaRow = to / baseCount - from / baseCount;
+                final int deltaColumn = to % baseCount - from % baseCount;
+                final int absRow = Math.abs(deltaRow);
+                final int absColumn = Math.abs(deltaColumn);
+                final int gcd = Math.max(1, gcd(absRow, absColumn));
+                final int index = from * mCellCount + to;
+                mDirections[index] = (deltaRow / gcd + baseCount - 1) * deltaSpan + deltaColumn / gcd + baseCount - 1;
+
+                int flags = 0;
+                if (absRow <= 1 && absColumn <= 1) {
+                    flags |= FLAG_ADJACENT;
+                }
+                if (absRow * absColumn == 2) {
+                    flags |= FLAG_KNIGHT;
+                }
+                if (gcd > 1) {
+                    flags |= FLAG_CROSSING;
+                }
+                mFlags[index] = (byte) flags;
+            }
+        }
+    }
+
+    /**
+     * Get the shared estimator of the specified grid size.
+     *
+     * @param baseCount the base count of the grid
+     * @return the estimator.
+     */
+    public static synchronized PatternStrengthEstimator get(int baseCount) {
+        if (baseCount <= 0) {
+            throw new IllegalArgumentException("Invalid base count: " + baseCount);
+        }
+
+        PatternStrengthEstimator estimator = sEstimators.get(baseCount);
+        if (estimator == null) {
+            estimator = new PatternStrengthEstimator(baseCount);
+            sEstimators.put(baseCount, estimator);
+        }
+        return estimator;
+    }
+
+    public int getBaseCount() {
+        return mBaseCount;
+    }
+
+    /**
+     * @return a new meter that is fed one cell at a time.
+     */
+    public Meter newMeter() {
+        return new Meter();
+    }
+
+    /**
+     * Estimate the bits of the whole pattern.
+     *
+     * @param cells the indexes of the cells in selection order
+     * @return the estimated bits.
+     */
+    public float estimate(int[] cells) {
+        Meter meter = new Meter();
+        for (int cell : cells) {
+            meter.add(cell);
+        }
+        return meter.getBits();
+    }
+
+    /**
+     * @param bits the estimated bits
+     * @return one of {@link #STRENGTH_WEAK}, {@link #STRENGTH_FAIR} and {@link #STRENGTH_STRONG}.
+     */
+    public static int getStrength(float bits) {
+        if (bits >= STRONG_BITS) {
+            return STRENGTH_STRONG;
+        }
+        return bits >= FAIR_BITS ? STRENGTH_FAIR : STRENGTH_WEAK;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            final int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /**
+     * The estimation of a pattern that is being drawn.
+     */
+    public final class Meter {
+        private final boolean[] mIsSelected = new boolean[mCellCount];
+        private int mSize;
+        private int mLastCell = -1;
+        private int mLastDirection = -1;
+        private float mBits;
+
+        private Meter() {
+        }
+
+        public void reset() {
+            Arrays.fill(mIsSelected, false);
+            mSize = 0;
+            mLastCell = -1;
+            mLastDirection = -1;
+            mBits = 0;
+        }
+
+        /**
+         * Add the selected cell to the estimation, the selected cells are ignored.
+         *
+         * @param cell the index of the cell
+         */
+        public void add(int cell) {
+            if (cell < 0 || cell >= mCellCount || mIsSelected[cell]) {
+                return;
+            }
+
+            if (mLastCell < 0) {
+                mBits = mStartBits[cell];
+            } else {
+                final int index = mLastCell * mCellCount + cell;
+                final int flags = mFlags[index];
+                final int direction = mDirections[index];
+                float weight = 1f;
+                if (direction == mLastDirection) {
+                    weight = STRAIGHT_WEIGHT;
+                } else if ((flags & FLAG_ADJACENT) != 0) {
+                    weight = ADJACENT_WEIGHT;
+                }
+
+                float bits = mLog2[mCellCount - mSize] * weight;
+                if ((flags & FLAG_KNIGHT) != 0) {
+                    bits += KNIGHT_BONUS;
+                }
+                if ((flags & FLAG_CROSSING) != 0 && isOverlap(mLastCell, cell)) {
+                    bits += OVERLAP_BONUS;
+                }
+                mBits += bits;
+                mLastDirection = direction;
+            }
+
+            mIsSelected[cell] = true;
+            mLastCell = cell;
+            mSize++;
+        }
+
+        /**
+         * Check whether the move crosses the selected cells only, the crossed cells are not selected again.
+         */
+        private boolean isOverlap(int from, int to) {
+            final int count = mIntermediateCellTable.getCount(from, to);
+            for (int i = 0; i < count; i++) {
+                if (!mIsSelected[mIntermediateCellTable.getCell(from, to, i)]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return the count of the cells that have been added.
+         */
+        public int size() {
+            return mSize;
+        }
+
+        /**
+         * @return the estimated bits of the cells that have been added.
+         */
+        public float getBits() {
+            return mBits;
+        }
+
+        /**
+         * @return one of {@link #STRENGTH_WEAK}, {@link #STRENGTH_FAIR} and {@link #STRENGTH_STRONG}.
+         */
+        public int getStrength() {
+            return PatternStrengthEstimator.getStrength(mBits);
+        }
+    }
+}
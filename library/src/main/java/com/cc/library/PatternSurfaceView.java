@@ -0,0 +1,637 @@
+/*
+ * Copyright (C) 2016 iChengc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cc.library;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PixelFormat;
+import android.graphics.PorterDuff;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import java.util.List;
+
+/**
+ * A pattern view that draws the cells and the path on its own render thread, so the feedback of the gesture does not
+ * wait for the main thread. It supports the same attributes as {@link PatternView} and shares its layout and
+ * hit-testing.
+ * <p>
+ * The touch events are still handled on the main thread, the render thread redraws the whole surface when the state
+ * changes. The surface is double buffered by the system, so a frame is never shown before it is completely drawn.
+ * The surface is translucent and placed as a media overlay, so the window behind it shows through while the views
+ * and dialogs of the window can still be drawn over it. Call {@link #setZOrderOnTop(boolean)} to change it.
+ */
+public class PatternSurfaceView extends SurfaceView implements SurfaceHolder.Callback {
+
+    /**
+     * The color of the cell;
+     */
+    private int mCellColor;
+
+    /**
+     * The error color
+     */
+    private int mErrorColor;
+
+    /**
+     * The padding
+     */
+    private int mPadding;
+
+    private int mStrokeWidth;
+
+    /**
+     * Guard the state that is shared by the main thread and the render thread.
+     */
+    private final Object mLock = new Object();
+
+    private PatternEngine mEngine;
+    private CellGeometry mGeometry;
+    private SelectedCells mSelectedCells;
+
+    /**
+     * The display state, read by the render thread. It is only written while holding {@link #mLock}.
+     */
+    private boolean mIsError = false;
+    private boolean mIsShowPath;
+
+    /**
+     * Specify whether is setup the gesture pass code..
+     */
+    private boolean mIsSetup;
+
+    private boolean mIsShowingResult = false;
+
+    private OnFinishListener mFinishListener;
+    private OnPatternFinishListener mPatternFinishListener;
+
+    /**
+     * The drawing resources, only accessed by the render thread.
+     */
+    private CellDrawable mCellDrawable;
+    private Bitmap mIdleLayer;
+    private Paint mTrailPaint;
+    private final Frame mFrame = new Frame();
+
+    /**
+     * Specify whether the geometry or the colors changed since the render thread took the last frame.
+     */
+    private boolean mIsCellDrawableDirty = true;
+
+    /**
+     * The path that connects the selected cells, it is extended when a cell is selected. The generation counts the
+     * changes so the render thread only copies a changed path.
+     */
+    private Path mTrailPath;
+    private int mTrailGeneration;
+
+    private float mTouchX, mTouchY;
+    private boolean mHasTouchPoint;
+
+    private RenderThread mRenderThread;
+
+    private final Runnable mResetRunnable = new Runnable() {
+        @Override
+        public void run() {
+            reset();
+            requestRender();
+        }
+    };
+
+    /**
+     * The interface definition for callback when finish select, the same contract as
+     * {@link PatternView.OnFinishListener}. It is called on the main thread.
+     */
+    public interface OnFinishListener {
+        /**
+         * The callback method when finish selected.
+         *
+         * @param patternView    the patternView
+         * @param result         the select result as integer list. e.g:"0,1,2,3,4,5,6,7,8,9"
+         * @param resultAsString the selected result as String. the string format is like:"0-1-2-3-4-5-6-7-8-9".
+         * @return true if the result is correct otherwise false.
+         */
+        boolean onFinish(PatternSurfaceView patternView, List<Integer> result, String resultAsString);
+    }
+
+    /**
+     * The interface definition for callback when finish select, the same contract as
+     * {@link PatternView.OnPatternFinishListener}. It is called on the main thread.
+     */
+    public interface OnPatternFinishListener {
+        /**
+         * The callback method when finish selected.
+         *
+         * @param patternView the patternView
+         * @param result      the selected cells, it is only valid during the callback.
+         * @return true if the result is correct otherwise false.
+         */
+        boolean onFinish(PatternSurfaceView patternView, SelectedCells result);
+    }
+
+    public PatternSurfaceView(Context context) {
+        super(context);
+        init(context, null);
+    }
+
+    public PatternSurfaceView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public PatternSurfaceView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init(context, attrs);
+    }
+
+    private void init(Context context, AttributeSet attrs) {
+        mTrailPath = new Path();
+        mTrailPaint = new Paint();
+        mTrailPaint.setAntiAlias(true);
+        mTrailPaint.setStyle(Paint.Style.STROKE);
+        mTrailPaint.setStrokeCap(Paint.Cap.ROUND);
+        mTrailPaint.setStrokeJoin(Paint.Join.ROUND);
+        mCellDrawable = new CellDrawable();
+        mErrorColor = context.getResources().getColor(android.R.color.holo_red_light);
+        mPadding = getPaddingTop();
+        mStrokeWidth = PatternView.dip2px(context, 2f);
+        mTrailPaint.setStrokeWidth(mStrokeWidth);
+
+        TypedArray typedArray = context.obtainStyledAttributes(attrs,
+                R.styleable.PatternView);
+        mIsShowPath = typedArray.getBoolean(R.styleable.PatternView_showPath, true);
+        mEngine = new PatternEngine(typedArray.getInt(R.styleable.PatternView_cellBaseCount, PatternView.DEFAULT_CELL_BASE_COUNT));
+        mCellColor = typedArray.getColor(R.styleable.PatternView_cellColor, context.getResources().getColor(android.R.color.white));
+        mEngine.setPreferredSpacing(typedArray.getDimensionPixelOffset(R.styleable.PatternView_cellSpacing, PatternView.dip2px(context, 32)));
+        mEngine.setPreferredCellRadius(typedArray.getDimensionPixelOffset(R.styleable.PatternView_cellRadius, -1));
+        mGeometry = mEngine.getGeometry();
+        mSelectedCells = mEngine.getSelectedCells();
+        mEngine.setOnCellSelectedListener(new PatternEngine.OnCellSelectedListener() {
+            @Override
+            public void onCellSelected(int index, float x, float y) {
+                appendToTrailPath(index, mSelectedCells.size() == 1);
+                mHasTouchPoint = true;
+            }
+        });
+        mEngine.setAutoSelectIntermediate(typedArray.getBoolean(R.styleable.PatternView_autoSelectIntermediate, false));
+        mGeometry.setHitRadiusScale(typedArray.getFloat(R.styleable.PatternView_hitRadiusScale, 1f));
+        typedArray.recycle();
+
+        getHolder().addCallback(this);
+        getHolder().setFormat(PixelFormat.TRANSLUCENT);
+        setZOrderMediaOverlay(true);
+    }
+
+    public void setOnFinishListener(OnFinishListener listener) {
+        mFinishListener = listener;
+    }
+
+    /**
+     * Set the listener that receives the result as primitive cells. If it is set it takes the place of the
+     * {@link OnFinishListener}.
+     *
+     * @param listener the listener.
+     */
+    public void setOnPatternFinishListener(OnPatternFinishListener listener) {
+        mPatternFinishListener = listener;
+    }
+
+    /**
+     * Set base cell count. the cell counts is {@code count} * {@code count}.
+     *
+     * @param count the base cell count.
+     */
+    public void setCellBaseCount(int count) {
+        synchronized (mLock) {
+            mEngine.setCellBaseCount(count);
+            rewindTrailPath();
+            mHasTouchPoint = false;
+
+            // If set the cell base count programmer need to re-calculate the cell's radius.
+            mEngine.setPreferredCellRadius(-1);
+            calculateCellRadius();
+        }
+        requestRender();
+    }
+
+    public void setCellColor(int color) {
+        synchronized (mLock) {
+            mCellColor = color;
+            mIsCellDrawableDirty = true;
+        }
+        requestRender();
+    }
+
+    public int getCellColor() {
+        return mCellColor;
+    }
+
+    public void setErrorColor(int color) {
+        synchronized (mLock) {
+            mErrorColor = color;
+            mIsCellDrawableDirty = true;
+        }
+        requestRender();
+    }
+
+    public int getErrorColor() {
+        return mErrorColor;
+    }
+
+    public boolean isSetup() {
+        return mIsSetup;
+    }
+
+    public void setIsSetup(boolean isSetup) {
+        synchronized (mLock) {
+            mIsSetup = isSetup;
+        }
+        requestRender();
+    }
+
+    public boolean isShowPath() {
+        return mIsShowPath;
+    }
+
+    public void setIsShowPath(boolean isShowPath) {
+        synchronized (mLock) {
+            mIsShowPath = isShowPath;
+        }
+        requestRender();
+    }
+
+    public void setHitRadiusScale(float scale) {
+        if (scale <= 0) {
+            throw new IllegalArgumentException("The hit radius scale must be positive");
+        }
+        synchronized (mLock) {
+            mGeometry.setHitRadiusScale(scale);
+        }
+    }
+
+    public void setAutoSelectIntermediate(boolean autoSelect) {
+        synchronized (mLock) {
+            mEngine.setAutoSelectIntermediate(autoSelect);
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        synchronized (mLock) {
+            calculateCellRadius();
+        }
+        requestRender();
+    }
+
+    private void calculateCellRadius() {
+        if (mEngine.layout(getMeasuredWidth(), getMeasuredHeight(), mPadding)) {
+            rewindTrailPath();
+            for (int i = 0; i < mSelectedCells.size(); i++) {
+                appendToTrailPath(mSelectedCells.get(i), i == 0);
+            }
+            mIsCellDrawableDirty = true;
+        }
+    }
+
+    private void appendToTrailPath(int index, boolean isFirst) {
+        final float x = mGeometry.getCenterX(index);
+        final float y = mGeometry.getCenterY(index);
+        if (isFirst) {
+            mTrailPath.moveTo(x, y);
+        } else {
+            mTrailPath.lineTo(x, y);
+        }
+        mTrailGeneration++;
+    }
+
+    private void rewindTrailPath() {
+        mTrailPath.rewind();
+        mTrailGeneration++;
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        mRenderThread = new RenderThread(holder);
+        mRenderThread.start();
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        requestRender();
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        // The surface must not be used after this method returns.
+        mRenderThread.quit();
+        mRenderThread = null;
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        removeCallbacks(mResetRunnable);
+        synchronized (mLock) {
+            mEngine.releaseResources();
+        }
+    }
+
+    private void requestRender() {
+        final RenderThread renderThread = mRenderThread;
+        if (renderThread != null) {
+            renderThread.requestRender();
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        int action = event.getAction();
+        if (action == MotionEvent.ACTION_DOWN) {
+            if (mIsShowingResult) {
+                return false;
+            }
+
+            reset();
+        }
+
+        synchronized (mLock) {
+            final int historySize = event.getHistorySize();
+            for (int i = 0; i < historySize; i++) {
+                mEngine.processTouchSample(event.getHistoricalX(i), event.getHistoricalY(i));
+            }
+            mEngine.processTouchSample(event.getX(), event.getY());
+            mTouchX = event.getX();
+            mTouchY = event.getY();
+        }
+
+        if (action == MotionEvent.ACTION_UP) {
+            finish();
+        }
+        requestRender();
+        return true;
+    }
+
+    private void reset() {
+        removeCallbacks(mResetRunnable);
+        synchronized (mLock) {
+            mIsError = false;
+            mEngine.reset();
+            rewindTrailPath();
+            mHasTouchPoint = false;
+            mIsShowingResult = false;
+        }
+    }
+
+    private void finish() {
+        synchronized (mLock) {
+            mIsShowingResult = true;
+        }
+        if ((mFinishListener != null || mPatternFinishListener != null) && mHasTouchPoint) {
+            final boolean isCorrect = mPatternFinishListener != null
+                    ? mPatternFinishListener.onFinish(this, mSelectedCells)
+                    : mFinishListener.onFinish(this, mSelectedCells.toList(), mSelectedCells.asString());
+            if (!isCorrect) {
+                synchronized (mLock) {
+                    mIsError = true;
+                }
+            }
+        }
+
+        // Only the latest reset is kept, so a stale one never clears the next gesture.
+        removeCallbacks(mResetRunnable);
+        postDelayed(mResetRunnable, 1000);
+    }
+
+    /**
+     * Copy the state of the next frame into {@link #mFrame}, called on the render thread while holding
+     * {@link #mLock}. Only what changed is copied, the cells and the flags are small.
+     */
+    private void takeFrame() {
+        final Frame frame = mFrame;
+        frame.mIsLaidOut = mEngine.isLaidOut();
+        if (!frame.mIsLaidOut) {
+            return;
+        }
+
+        if (mIsCellDrawableDirty) {
+            mIsCellDrawableDirty = false;
+            frame.mIsCellDrawableDirty = true;
+            frame.mGeometry.layout(mGeometry.getBaseCount(), mGeometry.getLeft(), mGeometry.getTop(),
+                    mGeometry.getCellRadius(), mGeometry.getSpacing());
+            frame.mCellColor = mCellColor;
+            frame.mErrorColor = mErrorColor;
+        }
+        if (frame.mTrailGeneration != mTrailGeneration) {
+            frame.mTrailGeneration = mTrailGeneration;
+            frame.mTrailPath.set(mTrailPath);
+        }
+
+        final int count = mSelectedCells.size();
+        if (frame.mCells.length < count) {
+            frame.mCells = new int[mGeometry.getCellCount()];
+        }
+        for (int i = 0; i < count; i++) {
+            frame.mCells[i] = mSelectedCells.get(i);
+        }
+        frame.mCellCount = count;
+        frame.mIsError = mIsError;
+        frame.mIsShowPath = mIsShowPath;
+        frame.mIsSetup = mIsSetup;
+        frame.mIsShowingResult = mIsShowingResult;
+        frame.mHasTouchPoint = mHasTouchPoint;
+        frame.mTouchX = mTouchX;
+        frame.mTouchY = mTouchY;
+    }
+
+    /**
+     * Draw the frame taken by {@link #takeFrame()}, called on the render thread without holding {@link #mLock}.
+     */
+    private void drawFrame(Canvas canvas) {
+        canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+        final Frame frame = mFrame;
+        if (!frame.mIsLaidOut) {
+            return;
+        }
+
+        final CellGeometry geometry = frame.mGeometry;
+        if (frame.mIsCellDrawableDirty) {
+            frame.mIsCellDrawableDirty = false;
+            mCellDrawable.init(geometry.getCellRadius(), mStrokeWidth, frame.mCellColor, frame.mErrorColor);
+            buildIdleLayer(geometry);
+        }
+
+        if (mIdleLayer != null) {
+            canvas.drawBitmap(mIdleLayer, geometry.getLeft() - mStrokeWidth, geometry.getTop() - mStrokeWidth, null);
+        }
+
+        final int count = frame.mCellCount;
+        if (count == 0) {
+            return;
+        }
+
+        final int[] cells = frame.mCells;
+        if (frame.mIsShowPath || frame.mIsSetup) {
+            mTrailPaint.setColor(frame.mIsError ? frame.mErrorColor : frame.mCellColor);
+            canvas.drawPath(frame.mTrailPath, mTrailPaint);
+            if (frame.mHasTouchPoint && !frame.mIsShowingResult) {
+                final int last = cells[count - 1];
+                canvas.drawLine(geometry.getCenterX(last), geometry.getCenterY(last), frame.mTouchX, frame.mTouchY,
+                        mTrailPaint);
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            final int index = cells[i];
+            Path arrow = null;
+            if (i < count - 1 && (frame.mIsSetup || frame.mIsError)) {
+                arrow = mCellDrawable.getArrow(geometry, index, cells[i + 1]);
+            }
+
+            mCellDrawable.set(geometry.getCenterX(index), geometry.getCenterY(index), true, frame.mIsError, arrow);
+            mCellDrawable.draw(canvas);
+        }
+    }
+
+    private void buildIdleLayer(CellGeometry geometry) {
+        recycleIdleLayer();
+        final int layerSize = geometry.getGridSize() + (mStrokeWidth << 1);
+        if (geometry.getCellRadius() <= 0 || layerSize <= 0) {
+            return;
+        }
+
+        mIdleLayer = Bitmap.createBitmap(layerSize, layerSize, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(mIdleLayer);
+        canvas.translate(mStrokeWidth - geometry.getLeft(), mStrokeWidth - geometry.getTop());
+        for (int i = 0; i < geometry.getCellCount(); i++) {
+            mCellDrawable.set(geometry.getCenterX(i), geometry.getCenterY(i), false, false, null);
+            mCellDrawable.draw(canvas);
+        }
+    }
+
+    private void recycleIdleLayer() {
+        if (mIdleLayer != null) {
+            mIdleLayer.recycle();
+            mIdleLayer = null;
+        }
+    }
+
+    /**
+     * The thread that draws the frames, it sleeps until a frame is requested. Several requests before the next frame
+     * is drawn are merged into one frame.
+     */
+    private class RenderThread extends Thread {
+        private final SurfaceHolder mHolder;
+        private boolean mIsRunning = true;
+        private boolean mIsRenderRequested = true;
+
+        RenderThread(SurfaceHolder holder) {
+            super("PatternSurfaceView");
+            mHolder = holder;
+        }
+
+        synchronized void requestRender() {
+            mIsRenderRequested = true;
+            notify();
+        }
+
+        void quit() {
+            synchronized (this) {
+                mIsRunning = false;
+                notify();
+            }
+
+            boolean isInterrupted = false;
+            while (true) {
+                try {
+                    join();
+                    break;
+                } catch (InterruptedException e) {
+                    isInterrupted = true;
+                }
+            }
+            if (isInterrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void run() {
+            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_DISPLAY);
+            while (true) {
+                synchronized (this) {
+                    while (mIsRunning && !mIsRenderRequested) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            // Check the state again.
+                        }
+                    }
+                    if (!mIsRunning) {
+                        break;
+                    }
+                    mIsRenderRequested = false;
+                }
+
+                // Only the copy of the state is taken under the lock, so the main thread never waits for a frame.
+                synchronized (mLock) {
+                    takeFrame();
+                }
+                Canvas canvas = mHolder.lockCanvas();
+                if (canvas == null) {
+                    continue;
+                }
+                try {
+                    drawFrame(canvas);
+                } finally {
+                    mHolder.unlockCanvasAndPost(canvas);
+                }
+            }
+
+            mCellDrawable.releaseResources();
+            recycleIdleLayer();
+            mFrame.mGeometry.releaseResources();
+            mFrame.mIsCellDrawableDirty = true;
+        }
+    }
+
+    /**
+     * The state that a frame is drawn from, a copy owned by the render thread.
+     */
+    private static final class Frame {
+        final CellGeometry mGeometry = new CellGeometry();
+        final Path mTrailPath = new Path();
+        int mTrailGeneration = -1;
+        int[] mCells = new int[0];
+        int mCellCount;
+        boolean mIsLaidOut;
+        boolean mIsCellDrawableDirty;
+        boolean mIsError;
+        boolean mIsShowPath;
+        boolean mIsSetup;
+        boolean mIsShowingResult;
+        boolean mHasTouchPoint;
+        float mTouchX, mTouchY;
+        int mCellColor;
+        int mErrorColor;
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright (C) 2016 iChengc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cc.library;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A compact binary recording of the touch samples of pattern gestures, replayed through a {@link PatternEngine} by
+ * {@link PatternTraceReplayer}. A trace starts with the configuration of the grid, followed by the records:
+ * <pre>
+ * header: "PTR" 1, base count, width, height, padding, cell radius, spacing, hit radius scale, flags
+ * record: type, time delta in microseconds, x, y  (DOWN, MOVE and UP)
+ *         type, length, cells                       (EXPECT, the pattern the preceding gesture must select)
+ *         type                                      (END)
+ * </pre>
+ * The integers are unsigned varints, the cell radius is zigzag encoded as it may be -1, the coordinates are floats.
+ * A touch sample takes 10 bytes when the delta is below 16 ms.
+ */
+public final class PatternTrace {
+
+    public static final int TYPE_END = 0;
+    public static final int TYPE_DOWN = 1;
+    public static final int TYPE_MOVE = 2;
+    public static final int TYPE_UP = 3;
+    public static final int TYPE_EXPECT = 4;
+
+    private static final int MAGIC = 0x50545231;
+    private static final int FLAG_AUTO_SELECT_INTERMEDIATE = 1;
+
+    private PatternTrace() {
+    }
+
+    /**
+     * The configuration of the grid that the gestures are recorded on.
+     */
+    public static final class Config {
+        public final int baseCount;
+        public final int width;
+        public final int height;
+        public final int padding;
+        /**
+         * The preferred cell radius, or -1 if the radius is computed from the size.
+         */
+        public final int cellRadius;
+        public final int spacing;
+        public final float hitRadiusScale;
+        public final boolean autoSelectIntermediate;
+
+        public Config(int baseCount, int width, int height, int padding, int cellRadius, int spacing,
+                      float hitRadiusScale, boolean autoSelectIntermediate) {
+            if (baseCount <= 0 || width < 0 || height < 0 || padding < 0 || cellRadius < -1 || spacing < 0
+                    || !(hitRadiusScale > 0)) {
+                throw new IllegalArgumentException("Invalid trace configuration");
+            }
+            this.baseCount = baseCount;
+            this.width = width;
+            this.height = height;
+            this.padding = padding;
+            this.cellRadius = cellRadius;
+            this.spacing = spacing;
+            this.hitRadiusScale = hitRadiusScale;
+            this.autoSelectIntermediate = autoSelectIntermediate;
+        }
+
+        /**
+         * @return a new engine that is configured and laid out as the grid of the trace.
+         */
+        public PatternEngine newEngine() {
+            PatternEngine engine = new PatternEngine(baseCount);
+            configure(engine);
+            return engine;
+        }
+
+        /**
+         * Configure and layout the engine as the grid of the trace.
+         *
+         * @param engine the engine
+         */
+        public void configure(PatternEngine engine) {
+            engine.setCellBaseCount(baseCount);
+            engine.setPreferredCellRadius(cellRadius);
+            engine.setPreferredSpacing(spacing);
+            engine.setHitRadiusScale(hitRadiusScale);
+            engine.setAutoSelectIntermediate(autoSelectIntermediate);
+            engine.layout(width, height, padding);
+        }
+    }
+
+    /**
+     * Write a trace record by record.
+     */
+    public static final class Writer {
+        private final DataOutputStream mOut;
+        private long mLastTimeMicros;
+        private boolean mHasSample;
+        private boolean mIsClosed;
+
+        /**
+         * Write the header of the trace.
+         *
+         * @param out    the output stream, it is flushed but not closed by {@link #close()}.
+         * @param config the configuration of the grid
+         * @throws IOException if failed to write.
+         */
+        public Writer(OutputStream out, Config config) throws IOException {
+            mOut = new DataOutputStream(out);
+            mOut.writeInt(MAGIC);
+            writeVarint(config.baseCount);
+            writeVarint(config.width);
+            writeVarint(config.height);
+            writeVarint(config.padding);
+            writeVarint((config.cellRadius << 1) ^ (config.cellRadius >> 31));
+            writeVarint(config.spacing);
+            mOut.writeFloat(config.hitRadiusScale);
+            mOut.writeByte(config.autoSelectIntermediate ? FLAG_AUTO_SELECT_INTERMEDIATE : 0);
+        }
+
+        /**
+         * Write a touch sample.
+         *
+         * @param type       one of {@link #TYPE_DOWN}, {@link #TYPE_MOVE} and {@link #TYPE_UP}
+         * @param timeMicros the time of the sample in microseconds, it must not decrease
+         * @param x          the x coordinate position
+         * @param y          the y coordinate position
+         * @throws IOException if failed to write.
+         */
+        public void writeSample(int type, long timeMicros, float x, float y) throws IOException {
+            if (type != TYPE_DOWN && type != TYPE_MOVE && type != TYPE_UP) {
+                throw new IllegalArgumentException("Not a sample type: " + type);
+            }
+            // The time of the first sample is the origin.
+            final long delta = mHasSample ? timeMicros - mLastTimeMicros : 0;
+            if (delta < 0 || delta > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Invalid sample time: " + timeMicros);
+            }
+            checkOpen();
+            mOut.writeByte(type);
+            writeVarint((int) delta);
+            mOut.writeFloat(x);
+            mOut.writeFloat(y);
+            mLastTimeMicros = timeMicros;
+            mHasSample = true;
+        }
+
+        /**
+         * Write the pattern that the preceding gesture must select.
+         *
+         * @param cells the indexes of the cells in selection order
+         * @throws IOException if failed to write.
+         */
+        public void writeExpected(int[] cells) throws IOException {
+            checkOpen();
+            mOut.writeByte(TYPE_EXPECT);
+            writeVarint(cells.length);
+            for (int cell : cells) {
+                if (cell < 0) {
+                    throw new IllegalArgumentException("Invalid cell: " + cell);
+                }
+                writeVarint(cell);
+            }
+        }
+
+        /**
+         * Write the end of the trace.
+         *
+         * @throws IOException if failed to write.
+         */
+        public void close() throws IOException {
+            if (!mIsClosed) {
+                mOut.writeByte(TYPE_END);
+                mOut.flush();
+                mIsClosed = true;
+            }
+        }
+
+        private void checkOpen() {
+            if (mIsClosed) {
+                throw new IllegalStateException("The trace is closed");
+            }
+        }
+
+        private void writeVarint(int value) throws IOException {
+            while ((value & ~0x7f) != 0) {
+                mOut.writeByte((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            mOut.writeByte(value);
+        }
+    }
+
+    /**
+     * Read a trace record by record, the fields of the current record are valid until the next one is read.
+     */
+    public static final class Reader {
+        private final DataInputStream mIn;
+        private final Config mConfig;
+        private int mType = -1;
+        private long mTimeMicros;
+        private float mX;
+        private float mY;
+        private int[] mCells = new int[16];
+        private int mCellCount;
+
+        /**
+         * Read the header of the trace.
+         *
+         * @param in the input stream, it is not closed.
+         * @throws IOException if failed to read or the data is not a trace.
+         */
+        public Reader(InputStream in) throws IOException {
+            mIn = new DataInputStream(in);
+            if (mIn.readInt() != MAGIC) {
+                throw new IOException("Not a pattern trace");
+            }
+            final int baseCount = readVarint();
+            final int width = readVarint();
+            final int height = readVarint();
+            final int padding = readVarint();
+            final int zigzagRadius = readVarint();
+            final int spacing = readVarint();
+            final float hitRadiusScale = mIn.readFloat();
+            final int flags = mIn.readUnsignedByte();
+            try {
+                mConfig = new Config(baseCount, width, height, padding, (zigzagRadius >>> 1) ^ -(zigzagRadius & 1),
+                        spacing, hitRadiusScale, (flags & FLAG_AUTO_SELECT_INTERMEDIATE) != 0);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Malformed pattern trace");
+            }
+        }
+
+        public Config getConfig() {
+            return mConfig;
+        }
+
+        /**
+         * Read the next record.
+         *
+         * @return the type of the record, {@link #TYPE_END} at the end of the trace.
+         * @throws IOException if failed to read or the data is malformed.
+         */
+        public int next() throws IOException {
+            if (mType == TYPE_END) {
+                return TYPE_END;
+            }
+
+            final int type;
+            try {
+                type = mIn.readUnsignedByte();
+            } catch (EOFException e) {
+                throw new IOException("Truncated pattern trace");
+            }
+            switch (type) {
+                case TYPE_END:
+                    break;
+                case TYPE_DOWN:
+                case TYPE_MOVE:
+                case TYPE_UP:
+                    mTimeMicros += readVarint();
+                    mX = mIn.readFloat();
+                    mY = mIn.readFloat();
+                    break;
+                case TYPE_EXPECT:
+                    final int count = readVarint();
+                    if (count > mConfig.baseCount * mConfig.baseCount) {
+                        throw new IOException("Malformed pattern trace");
+                    }
+                    if (count > mCells.length) {
+                        mCells = new int[count];
+                    }
+                    for (int i = 0; i < count; i++) {
+                        mCells[i] = readVarint();
+                    }
+                    mCellCount = count;
+                    break;
+                default:
+                    throw new IOException("Unknown trace record: " + type);
+            }
+            mType = type;
+            return type;
+        }
+
+        public int getType() {
+            return mType;
+        }
+
+        /**
+         * @return the time of the current sample in microseconds, relative to the first sample.
+         */
+        public long getTimeMicros() {
+            return mTimeMicros;
+        }
+
+        public float getX() {
+            return mX;
+        }
+
+        public float getY() {
+            return mY;
+        }
+
+        /**
+         * @return the count of the cells of the current expected pattern.
+         */
+        public int getExpectedCount() {
+            return mCellCount;
+        }
+
+        /**
+         * @param index the index in the expected pattern
+         * @return the index of the cell.
+         */
+        public int getExpectedCell(int index) {
+            return mCells[index];
+        }
+
+        private int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                final int b = mIn.readUnsignedByte();
+                value |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    if (value < 0) {
+                        break;
+                    }
+                    return value;
+                }
+            }
+            throw new IOException("Malformed pattern trace");
+        }
+    }
+}
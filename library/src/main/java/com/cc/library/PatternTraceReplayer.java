@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2016 iChengc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cc.library;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Stream {@link PatternTrace traces} through a {@link PatternEngine} at full speed, ignoring the timestamps, and check
+ * the selected patterns against the expected ones. It runs on a plain JVM, the {@code replayTraces} task of the
+ * benchmark module replays trace files from the command line, e.g. on a CI box.
+ * <p>
+ * The engine is reused as long as the grid does not change, so a replay does not allocate per sample. A replayer is
+ * not thread safe, use one per thread.
+ */
+public final class PatternTraceReplayer {
+
+    /**
+     * The interface definition for a callback when a gesture does not select the expected pattern.
+     */
+    public interface OnMismatchListener {
+        /**
+         * @param gesture  the index of the gesture in the trace
+         * @param expected the expected pattern
+         * @param actual   the selected pattern
+         */
+        void onMismatch(int gesture, int[] expected, int[] actual);
+    }
+
+    /**
+     * The counters of a replay.
+     */
+    public static final class Result {
+        private int mGestureCount;
+        private long mSampleCount;
+        private int mCheckedCount;
+        private int mMismatchCount;
+        private long mNanos;
+
+        /**
+         * @return the count of the finished gestures.
+         */
+        public int getGestureCount() {
+            return mGestureCount;
+        }
+
+        /**
+         * @return the count of the touch samples fed to the engine.
+         */
+        public long getSampleCount() {
+            return mSampleCount;
+        }
+
+        /**
+         * @return the count of the gestures that have an expected pattern.
+         */
+        public int getCheckedCount() {
+            return mCheckedCount;
+        }
+
+        public int getMismatchCount() {
+            return mMismatchCount;
+        }
+
+        /**
+         * @return the time of the replay, in nanoseconds.
+         */
+        public long getNanos() {
+            return mNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d gestures, %d samples, %d checked, %d mismatched in %.2f ms", mGestureCount,
+                    mSampleCount, mCheckedCount, mMismatchCount, mNanos / 1e6);
+        }
+    }
+
+    private PatternEngine mEngine;
+    private PatternTrace.Config mConfig;
+    private OnMismatchListener mOnMismatchListener;
+
+    public void setOnMismatchListener(OnMismatchListener listener) {
+        mOnMismatchListener = listener;
+    }
+
+    /**
+     * Replay a trace.
+     *
+     * @param in the input stream of the trace, it is not closed.
+     * @return the counters of the replay.
+     * @throws IOException if failed to read or the trace is malformed.
+     */
+    public Result replay(InputStream in) throws IOException {
+        PatternTrace.Reader reader = new PatternTrace.Reader(in);
+        PatternEngine engine = obtainEngine(reader.getConfig());
+        Result result = new Result();
+        final long start = System.nanoTime();
+        boolean hasFinishedGesture = false;
+        int type;
+        while ((type = reader.next()) != PatternTrace.TYPE_END) {
+            switch (type) {
+                case PatternTrace.TYPE_DOWN:
+                    engine.touchDown(reader.getX(), reader.getY());
+                    hasFinishedGesture = false;
+                    result.mSampleCount++;
+                    break;
+                case PatternTrace.TYPE_MOVE:
+                    engine.touchMove(reader.getX(), reader.getY());
+                    result.mSampleCount++;
+                    break;
+                case PatternTrace.TYPE_UP:
+                    if (engine.isGestureActive()) {
+                        engine.touchUp(reader.getX(), reader.getY());
+                        hasFinishedGesture = true;
+                        result.mGestureCount++;
+                    }
+                    result.mSampleCount++;
+                    break;
+                case PatternTrace.TYPE_EXPECT:
+                    if (!hasFinishedGesture) {
+                        throw new IOException("Expected pattern without a finished gesture");
+                    }
+                    result.mCheckedCount++;
+                    if (!matches(engine.getSelectedCells(), reader)) {
+                        result.mMismatchCount++;
+                        if (mOnMismatchListener != null) {
+                            final int[] expected = new int[reader.getExpectedCount()];
+                            for (int i = 0; i < expected.length; i++) {
+                                expected[i] = reader.getExpectedCell(i);
+                            }
+                            mOnMismatchListener.onMismatch(result.mGestureCount - 1, expected,
+                                    engine.getSelectedCells().toArray());
+                        }
+                    }
+                    break;
+            }
+        }
+        result.mNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    private PatternEngine obtainEngine(PatternTrace.Config config) {
+        if (mEngine == null) {
+            mEngine = config.newEngine();
+        } else if (!isSameGrid(mConfig, config)) {
+            config.configure(mEngine);
+        }
+        mConfig = config;
+        return mEngine;
+    }
+
+    private static boolean isSameGrid(PatternTrace.Config a, PatternTrace.Config b) {
+        return a.baseCount == b.baseCount && a.width == b.width && a.height == b.height && a.padding == b.padding
+                && a.cellRadius == b.cellRadius && a.spacing == b.spacing && a.hitRadiusScale == b.hitRadiusScale
+                && a.autoSelectIntermediate == b.autoSelectIntermediate;
+    }
+
+    private static boolean matches(SelectedCells actual, PatternTrace.Reader reader) {
+        final int count = reader.getExpectedCount();
+        if (actual.size() != count) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            if (actual.get(i) != reader.getExpectedCell(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
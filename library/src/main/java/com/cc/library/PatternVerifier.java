@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2016 iChengc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cc.library;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Hash the patterns with PBKDF2 and verify them against the stored hashes, so the pattern itself never needs to be
+ * stored. The stored hash is a String like {@code "1:PBKDF2WithHmacSHA1:10000:<salt>:<key>"}, it carries the
+ * algorithm and the iteration count so they can be changed without invalidating the hashes stored before.
+ * <p>
+ * The verifier is thread safe, the key derivation is expensive and should be run off the main thread, e.g. by a
+ * {@link PatternView.OnAsyncFinishListener}.
+ */
+public final class PatternVerifier {
+
+    public static final String DEFAULT_ALGORITHM = "PBKDF2WithHmacSHA1";
+    public static final int DEFAULT_ITERATIONS = 10000;
+
+    private static final int VERSION = 1;
+    private static final int SALT_LENGTH = 16;
+    private static final int KEY_LENGTH = 160;
+    private static final char SEPARATOR = ':';
+
+    /**
+     * The count of the parsed stored hashes that are kept.
+     */
+    private static final int STORED_HASH_CACHE_SIZE = 8;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final String mAlgorithm;
+    private final int mIterations;
+    private final SecureRandom mRandom = new SecureRandom();
+
+    /**
+     * Looking up the factory from the providers is slow, every thread keeps its own factory for each algorithm.
+     */
+    private final ThreadLocal<Map<String, SecretKeyFactory>> mKeyFactories =
+            new ThreadLocal<Map<String, SecretKeyFactory>>() {
+                @Override
+                protected Map<String, SecretKeyFactory> initialValue() {
+                    return new LinkedHashMap<String, SecretKeyFactory>();
+                }
+            };
+
+    /**
+     * The stored hashes that were parsed recently, in access order.
+     */
+    private final LinkedHashMap<String, StoredHash> mStoredHashes =
+            new LinkedHashMap<String, StoredHash>(STORED_HASH_CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, StoredHash> eldest) {
+                    return size() > STORED_HASH_CACHE_SIZE;
+                }
+            };
+
+    public PatternVerifier() {
+        this(DEFAULT_ALGORITHM, DEFAULT_ITERATIONS);
+    }
+
+    /**
+     * @param algorithm  the name of the PBKDF2 algorithm of {@link SecretKeyFactory}
+     * @param iterations the iteration count of the new hashes
+     */
+    public PatternVerifier(String algorithm, int iterations) {
+        if (iterations <= 0) {
+            throw new IllegalArgumentException("The iteration count must be positive");
+        }
+        mAlgorithm = algorithm;
+        mIterations = iterations;
+    }
+
+    public String getAlgorithm() {
+        return mAlgorithm;
+    }
+
+    public int getIterations() {
+        return mIterations;
+    }
+
+    /**
+     * Hash the pattern with a new random salt.
+     *
+     * @param baseCount the base count of the grid that the pattern was drawn on
+     * @param pattern   the selected cells
+     * @return the hash to be stored.
+     */
+    public String hash(int baseCount, SelectedCells pattern) {
+        return hash(baseCount, pattern.toArray());
+    }
+
+    /**
+     * Hash the pattern with a new random salt.
+     *
+     * @param baseCount the base count of the grid that the pattern was drawn on
+     * @param cells     the indexes of the cells in selection order
+     * @return the hash to be stored.
+     */
+    public String hash(int baseCount, int[] cells) {
+        final byte[] salt = new byte[SALT_LENGTH];
+        synchronized (mRandom) {
+            mRandom.nextBytes(salt);
+        }
+
+        final byte[] key = deriveKey(mAlgorithm, mIterations, salt, baseCount, cells);
+        StringBuilder sb = new StringBuilder();
+        sb.append(VERSION).append(SEPARATOR)
+                .append(mAlgorithm).append(SEPARATOR)
+                .append(mIterations).append(SEPARATOR);
+        appendHex(sb, salt);
+        sb.append(SEPARATOR);
+        appendHex(sb, key);
+        return sb.toString();
+    }
+
+    /**
+     * Verify the pattern against the stored hash.
+     *
+     * @param storedHash the hash returned by {@link #hash(int, SelectedCells)}
+     * @param baseCount  the base count of the grid that the pattern was drawn on
+     * @param pattern    the selected cells
+     * @return true if the pattern matches the stored hash.
+     * @throws IllegalArgumentException if the stored hash is malformed.
+     */
+    public boolean verify(String storedHash, int baseCount, SelectedCells pattern) {
+        return verify(storedHash, baseCount, pattern.toArray());
+    }
+
+    /**
+     * Verify the pattern against the stored hash.
+     *
+     * @param storedHash the hash returned by {@link #hash(int, int[])}
+     * @param baseCount  the base count of the grid that the pattern was drawn on
+     * @param cells      the indexes of the cells in selection order
+     * @return true if the pattern matches the stored hash.
+     * @throws IllegalArgumentException if the stored hash is malformed.
+     */
+    public boolean verify(String storedHash, int baseCount, int[] cells) {
+        final StoredHash stored = getStoredHash(storedHash);
+        final byte[] key = deriveKey(stored.algorithm, stored.iterations, stored.salt, baseCount, cells);
+        return constantTimeEquals(stored.key, key);
+    }
+
+    /**
+     * @param storedHash the stored hash
+     * @return true if the stored hash was created with another algorithm or a smaller iteration count than this
+     * verifier uses, it should be replaced by a new hash after the pattern is verified.
+     */
+    public boolean needsRehash(String storedHash) {
+        final StoredHash stored = getStoredHash(storedHash);
+        return !stored.algorithm.equals(mAlgorithm) || stored.iterations < mIterations;
+    }
+
+    private StoredHash getStoredHash(String storedHash) {
+        synchronized (mStoredHashes) {
+            StoredHash stored = mStoredHashes.get(storedHash);
+            if (stored == null) {
+                stored = StoredHash.parse(storedHash);
+                mStoredHashes.put(storedHash, stored);
+            }
+            return stored;
+        }
+    }
+
+    private byte[] deriveKey(String algorithm, int iterations, byte[] salt, int baseCount, int[] cells) {
+        final char[] password = encode(baseCount, cells);
+        final PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, KEY_LENGTH);
+        try {
+            return getKeyFactory(algorithm).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to derive the key with " + algorithm, e);
+        } finally {
+            spec.clearPassword();
+            Arrays.fill(password, '\0');
+        }
+    }
+
+    private SecretKeyFactory getKeyFactory(String algorithm) throws GeneralSecurityException {
+        final Map<String, SecretKeyFactory> factories = mKeyFactories.get();
+        SecretKeyFactory factory = factories.get(algorithm);
+        if (factory == null) {
+            factory = SecretKeyFactory.getInstance(algorithm);
+            factories.put(algorithm, factory);
+        }
+        return factory;
+    }
+
+    /**
+     * Encode the pattern as the password of the key derivation: the base count followed by the cells, a byte each
+     * or two bytes each if the grid has more than 256 cells, written as hex digits. The providers convert the
+     * password chars to bytes differently, ASCII chars are converted to the same bytes by all of them.
+     */
+    static char[] encode(int baseCount, int[] cells) {
+        if (baseCount <= 0 || baseCount > 0xff) {
+            throw new IllegalArgumentException("Invalid base count: " + baseCount);
+        }
+
+        final int cellCount = baseCount * baseCount;
+        final int bytesPerCell = cellCount > 0x100 ? 2 : 1;
+        final char[] password = new char[(1 + cells.length * bytesPerCell) << 1];
+        putHex(password, 0, baseCount);
+        int offset = 2;
+        for (int cell : cells) {
+            if (cell < 0 || cell >= cellCount) {
+                throw new IllegalArgumentException("Invalid cell: " + cell);
+            }
+            if (bytesPerCell == 2) {
+                putHex(password, offset, cell >>> 8);
+                offset += 2;
+            }
+            putHex(password, offset, cell & 0xff);
+            offset += 2;
+        }
+        return password;
+    }
+
+    /**
+     * Compare the arrays in a time that depends only on their length, so the time of a failed verification does
+     * not reveal how much of the key matched.
+     */
+    static boolean constantTimeEquals(byte[] expected, byte[] actual) {
+        if (expected.length != actual.length) {
+            return false;
+        }
+
+        int result = 0;
+        for (int i = 0; i < expected.length; i++) {
+            result |= expected[i] ^ actual[i];
+        }
+        return result == 0;
+    }
+
+    private static void putHex(char[] dest, int offset, int value) {
+        dest[offset] = HEX_DIGITS[(value >>> 4) & 0xf];
+        dest[offset + 1] = HEX_DIGITS[value & 0xf];
+    }
+
+    private static void appendHex(StringBuilder sb, byte[] bytes) {
+        for (byte b : bytes) {
+            sb.append(HEX_DIGITS[(b >>> 4) & 0xf]);
+            sb.append(HEX_DIGITS[b & 0xf]);
+        }
+    }
+
+    /**
+     * The parsed fields of a stored hash.
+     */
+    private static final class StoredHash {
+        final String algorithm;
+        final int iterations;
+        final byte[] salt;
+        final byte[] key;
+
+        private StoredHash(String algorithm, int iterations, byte[] salt, byte[] key) {
+            this.algorithm = algorithm;
+            this.iterations = iterations;
+            this.salt = salt;
+            this.key = key;
+        }
+
+        static StoredHash parse(String storedHash) {
+            final String[] fields = storedHash.split(String.valueOf(SEPARATOR));
+            if (fields.length != 5 || !String.valueOf(VERSION).equals(fields[0])) {
+                throw new IllegalArgumentException("Malformed stored hash");
+            }
+
+            final int iterations;
+            try {
+                iterations = Integer.parseInt(fields[2]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Malformed stored hash", e);
+            }
+            if (iterations <= 0) {
+                throw new IllegalArgumentException("Malformed stored hash");
+            }
+            return new StoredHash(fields[1], iterations, parseHex(fields[3]), parseHex(fields[4]));
+        }
+
+        private static byte[] parseHex(String hex) {
+            if (hex.length() == 0 || (hex.length() & 1) != 0) {
+                throw new IllegalArgumentException("Malformed stored hash");
+            }
+
+            final byte[] bytes = new byte[hex.length() >> 1];
+            for (int i = 0; i < bytes.length; i++) {
+                final int high = Character.digit(hex.charAt(i << 1), 16);
+                final int low = Character.digit(hex.charAt((i << 1) + 1), 16);
+                if (high < 0 || low < 0) {
+                    throw new IllegalArgumentException("Malformed stored hash");
+                }
+                bytes[i] = (byte) ((high << 4) | low);
+            }
+            return bytes;
+        }
+    }
+}
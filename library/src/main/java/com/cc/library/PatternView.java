@@ -15,30 +15,43 @@
  */
 package com.cc.library;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
-import android.graphics.ColorFilter;
+import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.Point;
-import android.graphics.drawable.Drawable;
+import android.graphics.Rect;
+import android.os.Build;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.util.AttributeSet;
+import android.view.Choreographer;
 import android.view.MotionEvent;
 import android.view.View;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Created by ChengC on 2016/3/24.
  */
 public class PatternView extends View {
 
-    private static final int DEFAULT_CELL_BASE_COUNT = 3;
+    static final int DEFAULT_CELL_BASE_COUNT = 3;
+    static final int DEFAULT_LARGE_GRID_THRESHOLD = 8;
+
+    /**
+     * The alpha of the selected cells and the path while the pattern is being verified.
+     */
+    static final int PENDING_ALPHA = 0x80;
 
     /**
      * The color of the cell;
@@ -55,57 +68,143 @@ public class PatternView extends View {
      */
     private int mPadding;
 
+    private int mStrokeWidth;
+
     /**
-     * The offset that layout the cells align the center horizontal of the view.
+     * The layout and the selection state of the cells.
      */
-    private int mCenterOffset;
+    private PatternEngine mEngine;
+
+    private CellGeometry mGeometry;
+
+    private boolean mIsError = false;
 
     /**
-     * The spacing of the two cell
+     * The selected cells
      */
-    private int mSpacing;
+    private SelectedCells mSelectedCells;
+
+    private boolean mIsShowPath;
 
     /**
-     * The radius of the cell
+     * Specify whether is setup the gesture pass code..
      */
-    private int mCellRadius;
+    private boolean mIsSetup;
 
-    private int mStrokeWidth;
+    private boolean mIsShowingResult = false;
 
     /**
-     * The base count of the cell, the real count of cell is {@code mCellBaseCount} * {@code mCellBaseCount}
+     * The base count from which the cells are drawn in batches instead of one by one.
      */
-    private int mCellBaseCount;
-    private boolean mIsError = false;
+    private int mLargeGridThreshold;
 
     /**
-     * The selected cells
+     * The cell radius below which the inner circles and the arrows are not drawn, the cells are drawn in batches.
      */
-    private List<Integer> mSelectedCells;
+    private int mLodRadiusThreshold;
 
-    private boolean mIsShowPath;
+    private OnFinishListener mFinishListener;
+    private OnPatternFinishListener mPatternFinishListener;
+    private OnAsyncFinishListener mAsyncFinishListener;
 
     /**
-     * Specify whether is setup the gesture pass code..
+     * The executor that runs the {@link OnAsyncFinishListener}, the shared background thread by default.
      */
-    private boolean mIsSetup;
+    private Executor mVerifyExecutor;
 
     /**
-     * The cell selected status.
+     * Specify whether the pattern is being verified by the {@link OnAsyncFinishListener}.
      */
-    private boolean[] mCellStatus;
+    private boolean mIsVerifying;
 
-    private boolean mIsShowingResult = false;
+    /**
+     * Increased whenever the view is reset, a verification result that was started with another generation is
+     * dropped.
+     */
+    private int mVerifyGeneration;
 
-    private OnFinishListener mFinishListener;
+    private final Runnable mResetRunnable = new Runnable() {
+        @Override
+        public void run() {
+            reset();
+            redraw();
+        }
+    };
+
+    private static ExecutorService sDefaultVerifyExecutor;
+
+    /**
+     * The progress listeners, the array is replaced when a listener is added or removed so it can be iterated
+     * without allocation.
+     */
+    private OnPatternProgressListener[] mProgressListeners = new OnPatternProgressListener[0];
+
+    /**
+     * The performance counters, nothing is measured if it is null.
+     */
+    private PatternMetrics mMetrics;
+
+    /**
+     * The count of the draw calls issued by the view itself in the current frame.
+     */
+    private int mDrawCallCount;
+
+    /**
+     * The blacklist that is fed with every selected cell and its current state.
+     */
+    private PatternBlacklist mBlacklist;
+    private int mBlacklistState;
 
     private CellDrawable mCellDrawable;
-    private Paint mPaint;
+
+    /**
+     * The path that connects the selected cells, it is extended when a cell is selected instead of being rebuilt on
+     * every frame.
+     */
+    private Path mTrailPath;
+    private Paint mTrailPaint;
 
     private Point mLastPoint;
     private Point mTouchPoint;
     private Point mNextPoint;
 
+    /**
+     * The offscreen layer that holds the whole grid in idle state. It is composited on every frame so only the
+     * selected cells and the path need to be drawn on top of it. The identical grids share the layer through the
+     * {@link PatternResourcePool}.
+     */
+    private IdleLayer mIdleLayerResource;
+    private Bitmap mIdleLayer;
+    private int mIdleLayerLeft, mIdleLayerTop;
+    private boolean mIsIdleLayerDirty = true;
+
+    /**
+     * The region that has to be redrawn for the current touch event.
+     */
+    private Rect mDirtyRect;
+
+    /**
+     * The bounds of the trail from the last selected cell to the touch point that was drawn in last frame.
+     */
+    private Rect mTrailBounds;
+
+    /**
+     * Specify whether the move events are collected and hit-tested once per display frame.
+     */
+    private boolean mIsCoalesceTouchEvents;
+
+    /**
+     * The touch samples that wait for the next frame, stored as x, y pairs.
+     */
+    private float[] mPendingSamples;
+    private int mPendingSampleCount;
+    private FrameCoalescer mFrameCoalescer;
+
+    /**
+     * The count of the touch samples that were merged into an already scheduled frame.
+     */
+    private int mCoalescedEventCount;
+
     /**
      * The interface definition for callback when finish select
      */
@@ -121,6 +220,109 @@ public class PatternView extends View {
         boolean onFinish(PatternView patternView, List<Integer> result, String resultAsString);
     }
 
+    /**
+     * The interface definition for callback when finish select, the result is passed without boxing the cells or
+     * building the string.
+     */
+    public interface OnPatternFinishListener {
+        /**
+         * The callback method when finish selected.
+         *
+         * @param patternView the patternView
+         * @param result      the selected cells, it is only valid during the callback. The String result is built
+         *                    only when {@link SelectedCells#asString()} is called.
+         * @return true if the result is correct otherwise false.
+         */
+        boolean onFinish(PatternView patternView, SelectedCells result);
+    }
+
+    /**
+     * The interface definition for callbacks while the pattern is being drawn, they are called on the main thread
+     * for every touch event so they should return quickly.
+     */
+    public interface OnPatternProgressListener {
+        /**
+         * Called when a new gesture starts, before any cell of it is selected.
+         *
+         * @param patternView the patternView
+         */
+        void onStart(PatternView patternView);
+
+        /**
+         * Called when a cell is selected.
+         *
+         * @param patternView the patternView
+         * @param index       the index of the cell
+         * @param position    the position of the cell in selection order
+         */
+        void onCellAdded(PatternView patternView, int index, int position);
+
+        /**
+         * Called when the selected cells are cleared.
+         *
+         * @param patternView the patternView
+         */
+        void onCleared(PatternView patternView);
+
+        /**
+         * Called when the touch point moves during the gesture.
+         *
+         * @param patternView the patternView
+         * @param x           the x coordinate position of the touch
+         * @param y           the y coordinate position of the touch
+         */
+        void onTouchMoved(PatternView patternView, float x, float y);
+    }
+
+    /**
+     * An {@link OnPatternProgressListener} that does nothing, extend it to override only the needed callbacks.
+     */
+    public static class SimpleOnPatternProgressListener implements OnPatternProgressListener {
+        @Override
+        public void onStart(PatternView patternView) {
+        }
+
+        @Override
+        public void onCellAdded(PatternView patternView, int index, int position) {
+        }
+
+        @Override
+        public void onCleared(PatternView patternView) {
+        }
+
+        @Override
+        public void onTouchMoved(PatternView patternView, float x, float y) {
+        }
+    }
+
+    /**
+     * The interface definition for callback when finish select, the result is verified off the main thread. The
+     * view shows the pending state until the result is reported and ignores new gestures meanwhile.
+     */
+    public interface OnAsyncFinishListener {
+        /**
+         * The callback method when finish selected, called on the verify executor.
+         *
+         * @param patternView the patternView
+         * @param result      a copy of the selected cells, it stays valid after the callback.
+         * @param callback    the callback that the result must be reported to, from any thread.
+         */
+        void onFinish(PatternView patternView, SelectedCells result, VerifyCallback callback);
+    }
+
+    /**
+     * The callback that receives the result of an {@link OnAsyncFinishListener}.
+     */
+    public interface VerifyCallback {
+        /**
+         * Report the verification result, only the first call is used. The result is ignored if the view has been
+         * reset since the verification started.
+         *
+         * @param isCorrect true if the result is correct otherwise false.
+         */
+        void onResult(boolean isCorrect);
+    }
+
     public PatternView(Context context) {
         super(context);
         init(context, null, 0);
@@ -136,24 +338,45 @@ public class PatternView extends View {
     }
 
     private void init(Context context, AttributeSet attrs, int defStyleAttr) {
-        mPaint = new Paint();
-        mPaint.setAntiAlias(true);
+        mTrailPath = new Path();
+        mTrailPaint = new Paint();
+        mTrailPaint.setAntiAlias(true);
+        mTrailPaint.setStyle(Paint.Style.STROKE);
+        mTrailPaint.setStrokeCap(Paint.Cap.ROUND);
+        mTrailPaint.setStrokeJoin(Paint.Join.ROUND);
         mCellDrawable = new CellDrawable();
-        mSelectedCells = new ArrayList<Integer>();
         mNextPoint = new Point();
         mLastPoint = new Point();
+        mDirtyRect = new Rect();
+        mTrailBounds = new Rect();
+        mPendingSamples = new float[16];
         mErrorColor = context.getResources().getColor(android.R.color.holo_red_light);
         mPadding = getPaddingTop();
         mStrokeWidth = dip2px(context, 2f);
+        mTrailPaint.setStrokeWidth(mStrokeWidth);
 
         TypedArray typedArray = context.obtainStyledAttributes(attrs,
                 R.styleable.PatternView);
         mIsShowPath = typedArray.getBoolean(R.styleable.PatternView_showPath, true);
-        mCellBaseCount = typedArray.getInt(R.styleable.PatternView_cellBaseCount, DEFAULT_CELL_BASE_COUNT);
+        mEngine = new PatternEngine(typedArray.getInt(R.styleable.PatternView_cellBaseCount, DEFAULT_CELL_BASE_COUNT));
         mCellColor = typedArray.getColor(R.styleable.PatternView_cellColor, context.getResources().getColor(android.R.color.white));
-        mSpacing = typedArray.getDimensionPixelOffset(R.styleable.PatternView_cellSpacing, dip2px(context, 32));
-        mCellRadius = typedArray.getDimensionPixelOffset(R.styleable.PatternView_cellRadius, -1);
-        mCellStatus = new boolean[mCellBaseCount * mCellBaseCount];
+        mEngine.setPreferredSpacing(typedArray.getDimensionPixelOffset(R.styleable.PatternView_cellSpacing, dip2px(context, 32)));
+        mEngine.setPreferredCellRadius(typedArray.getDimensionPixelOffset(R.styleable.PatternView_cellRadius, -1));
+        mGeometry = mEngine.getGeometry();
+        mSelectedCells = mEngine.getSelectedCells();
+        mEngine.setOnCellSelectedListener(new PatternEngine.OnCellSelectedListener() {
+            @Override
+            public void onCellSelected(int index, float x, float y) {
+                onCellAdded(index, x, y);
+            }
+        });
+        setCoalesceTouchEvents(typedArray.getBoolean(R.styleable.PatternView_coalesceTouchEvents, false));
+        mEngine.setAutoSelectIntermediate(typedArray.getBoolean(R.styleable.PatternView_autoSelectIntermediate, false));
+        mGeometry.setHitRadiusScale(typedArray.getFloat(R.styleable.PatternView_hitRadiusScale, 1f));
+        mLargeGridThreshold = typedArray.getInt(R.styleable.PatternView_largeGridThreshold,
+                DEFAULT_LARGE_GRID_THRESHOLD);
+        mLodRadiusThreshold = typedArray.getDimensionPixelOffset(R.styleable.PatternView_lodRadiusThreshold,
+                dip2px(context, 8));
 
         typedArray.recycle();
     }
@@ -162,8 +385,7 @@ public class PatternView extends View {
     protected Parcelable onSaveInstanceState() {
         Parcelable superState = super.onSaveInstanceState();
         SavedState ss = new SavedState(superState);
-        ss.cellStatus = mCellStatus;
-        ss.selectedCells = mSelectedCells;
+        ss.selectedCells = mSelectedCells.toArray();
         return ss;
     }
 
@@ -177,29 +399,193 @@ public class PatternView extends View {
         SavedState ss = (SavedState) state;
         super.onRestoreInstanceState(ss.getSuperState());
 
-        mSelectedCells = ss.selectedCells;
-        mCellStatus = ss.cellStatus;
+        cancelVerification();
+        mEngine.restore(ss.selectedCells);
+        updateBlacklistState();
+        rebuildTrailPath();
     }
 
     public void setOnFinishListener(OnFinishListener listener) {
         mFinishListener = listener;
     }
 
+    /**
+     * Set the listener that receives the result as primitive cells. If it is set it takes the place of the
+     * {@link OnFinishListener}.
+     *
+     * @param listener the listener.
+     */
+    public void setOnPatternFinishListener(OnPatternFinishListener listener) {
+        mPatternFinishListener = listener;
+    }
+
+    /**
+     * Set the listener that verifies the result off the main thread. If it is set it takes the place of the
+     * {@link OnFinishListener} and the {@link OnPatternFinishListener}.
+     *
+     * @param listener the listener.
+     */
+    public void setOnAsyncFinishListener(OnAsyncFinishListener listener) {
+        mAsyncFinishListener = listener;
+    }
+
+    /**
+     * Set the performance counters that the view updates, e.g. to report them to telemetry.
+     *
+     * @param metrics the metrics, or null to stop measuring.
+     */
+    public void setMetrics(PatternMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    public PatternMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Add a listener that is notified while the pattern is being drawn.
+     *
+     * @param listener the listener.
+     */
+    public void addOnPatternProgressListener(OnPatternProgressListener listener) {
+        final int count = mProgressListeners.length;
+        final OnPatternProgressListener[] listeners = new OnPatternProgressListener[count + 1];
+        System.arraycopy(mProgressListeners, 0, listeners, 0, count);
+        listeners[count] = listener;
+        mProgressListeners = listeners;
+    }
+
+    public void removeOnPatternProgressListener(OnPatternProgressListener listener) {
+        for (int i = 0; i < mProgressListeners.length; i++) {
+            if (mProgressListeners[i] == listener) {
+                OnPatternProgressListener[] listeners = new OnPatternProgressListener[mProgressListeners.length - 1];
+                System.arraycopy(mProgressListeners, 0, listeners, 0, i);
+                System.arraycopy(mProgressListeners, i + 1, listeners, i, listeners.length - i);
+                mProgressListeners = listeners;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Set the blacklist of the patterns, it is fed with every selected cell so {@link #isPatternBlacklisted()} is
+     * known as soon as the finger lifts.
+     *
+     * @param blacklist the blacklist, it is ignored if it is for another grid size.
+     */
+    public void setBlacklist(PatternBlacklist blacklist) {
+        mBlacklist = blacklist;
+        updateBlacklistState();
+    }
+
+    public PatternBlacklist getBlacklist() {
+        return mBlacklist;
+    }
+
+    /**
+     * @return true if the selected cells are a pattern of the blacklist, e.g. to reject it in
+     * {@link OnFinishListener#onFinish(PatternView, List, String)}.
+     */
+    public boolean isPatternBlacklisted() {
+        return mBlacklist != null && mBlacklist.isBlacklisted(mBlacklistState);
+    }
+
+    /**
+     * Feed the blacklist with all the selected cells, for the selection that was not made by touch.
+     */
+    private void updateBlacklistState() {
+        if (mBlacklist == null) {
+            return;
+        }
+
+        if (mBlacklist.getBaseCount() != mEngine.getCellBaseCount()) {
+            mBlacklistState = PatternBlacklist.NO_MATCH;
+            return;
+        }
+        mBlacklistState = mBlacklist.getInitialState();
+        for (int i = 0; i < mSelectedCells.size(); i++) {
+            mBlacklistState = mBlacklist.next(mBlacklistState, mSelectedCells.get(i));
+        }
+    }
+
+    /**
+     * Set the executor that runs the {@link OnAsyncFinishListener}.
+     *
+     * @param executor the executor, or null to use the shared background thread.
+     */
+    public void setVerifyExecutor(Executor executor) {
+        mVerifyExecutor = executor;
+    }
+
+    /**
+     * @return true if the pattern is being verified by the {@link OnAsyncFinishListener}.
+     */
+    public boolean isVerifying() {
+        return mIsVerifying;
+    }
+
+    /**
+     * Cancel the pending verification and clear the pattern, the result of the verification will be ignored.
+     */
+    public void cancelVerification() {
+        if (mIsVerifying) {
+            removeCallbacks(mResetRunnable);
+            reset();
+            invalidate();
+        }
+    }
+
     /**
      * Set base cell count. the cell counts is {@code count} * {@code count}.
      *
      * @param count the base cell count.
      */
     public void setCellBaseCount(int count) {
-        mCellBaseCount = count;
-        mCellStatus = new boolean[mCellBaseCount * mCellBaseCount];
+        cancelVerification();
+        final boolean isCleared = !mSelectedCells.isEmpty();
+        mEngine.setCellBaseCount(count);
+        mTrailPath.rewind();
+        updateBlacklistState();
+        if (isCleared) {
+            dispatchCleared();
+        }
 
         // If set the cell base count programmer need to re-calculate the cell's radius.
-        mCellRadius = -1;
+        mEngine.setPreferredCellRadius(-1);
         calculateCellRadius();
         invalidate();
     }
 
+    /**
+     * Set the color of the cells and the path.
+     *
+     * @param color the cell color.
+     */
+    public void setCellColor(int color) {
+        mCellColor = color;
+        initCellDrawable();
+        invalidate();
+    }
+
+    public int getCellColor() {
+        return mCellColor;
+    }
+
+    /**
+     * Set the color used to draw the selected cells when the pattern is wrong.
+     *
+     * @param color the error color.
+     */
+    public void setErrorColor(int color) {
+        mErrorColor = color;
+        initCellDrawable();
+        invalidate();
+    }
+
+    public int getErrorColor() {
+        return mErrorColor;
+    }
+
     public boolean isSetup() {
         return mIsSetup;
     }
@@ -216,6 +602,118 @@ public class PatternView extends View {
         this.mIsShowPath = isShowPath;
     }
 
+    public float getHitRadiusScale() {
+        return mGeometry.getHitRadiusScale();
+    }
+
+    /**
+     * Set the radius of the area that selects a cell, relative to the radius of the cell. 1 means a touch must be
+     * inside the circle of the cell, a larger value makes the cells easier to hit.
+     *
+     * @param scale the scale of the hit radius, must be positive.
+     */
+    public void setHitRadiusScale(float scale) {
+        if (scale <= 0) {
+            throw new IllegalArgumentException("The hit radius scale must be positive");
+        }
+        mGeometry.setHitRadiusScale(scale);
+    }
+
+    public int getLargeGridThreshold() {
+        return mLargeGridThreshold;
+    }
+
+    /**
+     * Set the base count from which the grid is drawn in the large-grid mode: the idle cells are drawn as a single
+     * path and the selected cells as a single batch of points, instead of a draw call per cell.
+     *
+     * @param baseCount the smallest base count of the large grids, 8 by default.
+     */
+    public void setLargeGridThreshold(int baseCount) {
+        mLargeGridThreshold = baseCount;
+        mIsIdleLayerDirty = true;
+        invalidate();
+    }
+
+    public int getLodRadiusThreshold() {
+        return mLodRadiusThreshold;
+    }
+
+    /**
+     * Set the cell radius below which the cells are drawn at a lower level of detail: the selected cells are filled
+     * instead of getting the inner circles and no arrows are drawn. The cells are drawn in batches as in the
+     * large-grid mode.
+     *
+     * @param radius the radius in pixels, 8dp by default.
+     */
+    public void setLodRadiusThreshold(int radius) {
+        mLodRadiusThreshold = radius;
+        mIsIdleLayerDirty = true;
+        invalidate();
+    }
+
+    /**
+     * @return true if the cells are drawn in batches.
+     */
+    private boolean isBatched() {
+        return mEngine.getCellBaseCount() >= mLargeGridThreshold || isLowDetail();
+    }
+
+    private boolean isLowDetail() {
+        return mGeometry.getCellRadius() < mLodRadiusThreshold;
+    }
+
+    public boolean isAutoSelectIntermediate() {
+        return mEngine.isAutoSelectIntermediate();
+    }
+
+    /**
+     * Set whether the cells that lie between two selected cells are selected automatically, e.g. drag from cell 0
+     * to cell 2 selects cell 1 as well.
+     *
+     * @param autoSelect true to select the intermediate cells automatically.
+     */
+    public void setAutoSelectIntermediate(boolean autoSelect) {
+        mEngine.setAutoSelectIntermediate(autoSelect);
+    }
+
+    public boolean isCoalesceTouchEvents() {
+        return mIsCoalesceTouchEvents;
+    }
+
+    /**
+     * Set whether the move events should be coalesced. If true the touch samples are collected and hit-tested in a
+     * batch, and the view is redrawn at most once per display frame whatever the input sampling rate is. It is only
+     * supported since {@code API LEVEL 16}, the events are handled immediately on the lower levels.
+     *
+     * @param coalesce true to coalesce the move events.
+     */
+    public void setCoalesceTouchEvents(boolean coalesce) {
+        if (coalesce && Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            coalesce = false;
+        }
+
+        if (!coalesce) {
+            flushTouchSamples();
+        } else if (mFrameCoalescer == null) {
+            mFrameCoalescer = new FrameCoalescer();
+        }
+        mIsCoalesceTouchEvents = coalesce;
+    }
+
+    /**
+     * Get the count of the touch samples that have been merged into a frame which had already been scheduled.
+     *
+     * @return the count of the coalesced events.
+     */
+    public int getCoalescedEventCount() {
+        return mCoalescedEventCount;
+    }
+
+    public void resetCoalescedEventCount() {
+        mCoalescedEventCount = 0;
+    }
+
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         super.onMeasure(widthMeasureSpec, heightMeasureSpec);
@@ -223,75 +721,248 @@ public class PatternView extends View {
     }
 
     private void calculateCellRadius() {
-        if (mCellBaseCount <= 0) {
+        if (!mEngine.layout(getMeasuredWidth(), getMeasuredHeight(), mPadding)) {
             return;
         }
+        rebuildTrailPath();
+        initCellDrawable();
+    }
 
-        final int size = Math.min(getMeasuredHeight(), getMeasuredWidth());
-        if (mCellRadius == -1) {
-            int remainSpace = size - (mPadding << 1) - mSpacing * (mCellBaseCount - 1);
-            if (remainSpace <= 0) {
-                throw new RuntimeException("No enough space for drawing the cells");
-            }
-            mCellRadius = remainSpace / (mCellBaseCount << 1);
-            mCenterOffset = size == getMeasuredHeight() ? ((getMeasuredWidth() - getMeasuredHeight()) >> 1) : 0;
-        } else {
-            final int cellsUsedSpace = (mCellRadius << 1) * mCellBaseCount;
-            if (cellsUsedSpace > size - (mPadding << 1)) {
-                throw new RuntimeException("No enough space for drawing the cells");
-            }
-
-            final int remainSpacing = size - cellsUsedSpace - (mPadding << 1);
-            if (remainSpacing - mSpacing * (mCellBaseCount - 1) < 0) {
-                mSpacing = remainSpacing / (mCellBaseCount - 1);
-            }
+    private void initCellDrawable() {
+        mCellDrawable.init(mGeometry.getCellRadius(), mStrokeWidth, mCellColor, mErrorColor);
+        mIsIdleLayerDirty = true;
+    }
 
-            mCenterOffset = ((getMeasuredWidth()  - cellsUsedSpace - mSpacing * (mCellBaseCount - 1)) >> 1) - mPadding;
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mCellDrawable.releaseResources();
+        recycleIdleLayer();
+        mEngine.releaseResources();
+        if (mFrameCoalescer != null) {
+            mFrameCoalescer.cancel();
         }
-        mCellDrawable.init();
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
+        if (!mEngine.isLaidOut()) {
+            return;
+        }
+
+        final long start = mMetrics != null ? System.nanoTime() : 0;
+        final int cellDrawCallCount = mCellDrawable.getDrawCallCount();
+        mDrawCallCount = 0;
         drawUnselectedCells(canvas);
+        // The pending pattern is drawn translucent until the result arrives.
+        mCellDrawable.setAlpha(mIsVerifying ? PENDING_ALPHA : 0xff);
         drawSelectedCells(canvas);
+        mCellDrawable.setAlpha(0xff);
+        if (mMetrics != null) {
+            mMetrics.onFrame(System.nanoTime() - start,
+                    mDrawCallCount + mCellDrawable.getDrawCallCount() - cellDrawCallCount);
+        }
     }
 
     private void drawUnselectedCells(Canvas canvas) {
-        for (int i = 0; i < mCellStatus.length; i++) {
-            if (!mCellStatus[i]) {
+        if (mIsIdleLayerDirty) {
+            buildIdleLayer();
+        }
+
+        if (mIdleLayer != null) {
+            // The selected cells are drawn over the idle grid, so there is no need to skip them here.
+            canvas.drawBitmap(mIdleLayer, mIdleLayerLeft, mIdleLayerTop, null);
+            mDrawCallCount++;
+            return;
+        }
+
+        if (isBatched()) {
+            mCellDrawable.drawIdleCells(canvas, mGeometry);
+            return;
+        }
+
+        for (int i = 0; i < mGeometry.getCellCount(); i++) {
+            if (!mEngine.isCellSelected(i)) {
                 calcPositionOfCell(i, mNextPoint);
-                mCellDrawable.set(mNextPoint.x, mNextPoint.y, false, CellDrawable.ANGEL_NONE);
+                mCellDrawable.set(mNextPoint.x, mNextPoint.y, false, false, null);
                 mCellDrawable.draw(canvas);
             }
         }
     }
 
+    /**
+     * Render all the cells in idle state into {@link #mIdleLayer}, or take the layer of an identical grid from the
+     * pool. The layer only covers the bounds of the grid.
+     */
+    private void buildIdleLayer() {
+        mIsIdleLayerDirty = false;
+        if (!mEngine.isLaidOut() || mGeometry.getCellRadius() <= 0) {
+            releaseIdleLayer();
+            return;
+        }
+
+        final int gridSize = mGeometry.getGridSize();
+        // Leave room for the stroke of the outer cells.
+        final int left = mGeometry.getLeft() - mStrokeWidth;
+        final int top = mGeometry.getTop() - mStrokeWidth;
+        final int layerSize = gridSize + (mStrokeWidth << 1);
+        if (layerSize <= 0) {
+            releaseIdleLayer();
+            return;
+        }
+
+        final boolean isBatched = isBatched();
+        IdleLayer layer = PatternResourcePool.getDefault().acquire(
+                new PatternResourcePool.Key(PatternResourcePool.TYPE_IDLE_LAYER, mGeometry.getBaseCount(),
+                        mGeometry.getCellRadius(), mGeometry.getSpacing(), mStrokeWidth, mCellColor,
+                        isBatched ? 1 : 0),
+                new PatternResourcePool.Loader<IdleLayer>() {
+                    @Override
+                    public IdleLayer load() {
+                        Bitmap bitmap = Bitmap.createBitmap(layerSize, layerSize, Bitmap.Config.ARGB_8888);
+                        renderIdleCells(new Canvas(bitmap), left, top, isBatched);
+                        return new IdleLayer(bitmap);
+                    }
+                });
+        // Release the old layer after the new one is acquired, so an unchanged layer stays in the pool.
+        releaseIdleLayer();
+        mIdleLayerResource = layer;
+        mIdleLayer = layer.mBitmap;
+        mIdleLayerLeft = left;
+        mIdleLayerTop = top;
+    }
+
+    private void renderIdleCells(Canvas canvas, int left, int top, boolean isBatched) {
+        canvas.translate(-left, -top);
+        if (isBatched) {
+            mCellDrawable.drawIdleCells(canvas, mGeometry);
+            return;
+        }
+
+        for (int i = 0; i < mGeometry.getCellCount(); i++) {
+            calcPositionOfCell(i, mNextPoint);
+            mCellDrawable.set(mNextPoint.x, mNextPoint.y, false, false, null);
+            mCellDrawable.draw(canvas);
+        }
+    }
+
+    private void recycleIdleLayer() {
+        releaseIdleLayer();
+        mIsIdleLayerDirty = true;
+    }
+
+    private void releaseIdleLayer() {
+        if (mIdleLayerResource != null) {
+            PatternResourcePool.getDefault().release(mIdleLayerResource);
+            mIdleLayerResource = null;
+            mIdleLayer = null;
+        }
+    }
+
+    /**
+     * The idle grid of a size, stroke width and color.
+     */
+    private static final class IdleLayer extends PatternResourcePool.Resource {
+        final Bitmap mBitmap;
+
+        IdleLayer(Bitmap bitmap) {
+            mBitmap = bitmap;
+        }
+
+        @Override
+        long getSize() {
+            return (long) mBitmap.getRowBytes() * mBitmap.getHeight();
+        }
+
+        @Override
+        void recycle() {
+            mBitmap.recycle();
+        }
+    }
+
     private void drawSelectedCells(Canvas canvas) {
+        if (mSelectedCells.isEmpty()) {
+            return;
+        }
+
+        if (mIsShowPath || mIsSetup) {
+            final int trailColor = mIsError ? mErrorColor : mCellColor;
+            mTrailPaint.setColor(trailColor);
+            if (mIsVerifying) {
+                mTrailPaint.setAlpha(Color.alpha(trailColor) * PENDING_ALPHA / 0xff);
+            }
+            canvas.drawPath(mTrailPath, mTrailPaint);
+            mDrawCallCount++;
+            if (mTouchPoint != null) {
+                calcPositionOfCell(mSelectedCells.getLast(), mLastPoint);
+                canvas.drawLine(mLastPoint.x, mLastPoint.y, mTouchPoint.x, mTouchPoint.y, mTrailPaint);
+                mDrawCallCount++;
+            }
+        }
+
+        if (isBatched()) {
+            drawSelectedCellsInBatch(canvas);
+            return;
+        }
+
         for (int i = 0; i < mSelectedCells.size(); i++) {
-            mPaint.setStyle(Paint.Style.STROKE);
-            mPaint.setStrokeWidth(mStrokeWidth);
-            mPaint.setColor(mIsError ? mErrorColor : mCellColor);
             calcPositionOfCell(mSelectedCells.get(i), mLastPoint);
-            double angle = CellDrawable.ANGEL_NONE;
-            if (i < mSelectedCells.size() - 1) {
-                calcPositionOfCell(mSelectedCells.get(i + 1), mNextPoint);
-                angle = getAngle(mSelectedCells.get(i + 1));
-                if (mIsShowPath || mIsSetup) {
-                    canvas.drawLine(mLastPoint.x, mLastPoint.y, mNextPoint.x, mNextPoint.y, mPaint);
-                }
-            } else {
-                if (mTouchPoint != null && (mIsShowPath || mIsSetup)) {
-                    canvas.drawLine(mLastPoint.x, mLastPoint.y, mTouchPoint.x, mTouchPoint.y, mPaint);
-                }
+            Path arrow = null;
+            if (i < mSelectedCells.size() - 1 && (mIsSetup || mIsError)) {
+                arrow = mCellDrawable.getArrow(mGeometry, mSelectedCells.get(i), mSelectedCells.get(i + 1));
             }
 
-            mCellDrawable.set(mLastPoint.x, mLastPoint.y, true, angle);
+            mCellDrawable.set(mLastPoint.x, mLastPoint.y, true, mIsError, arrow);
             mCellDrawable.draw(canvas);
         }
     }
 
+    /**
+     * Draw the selected cells over the idle rings by one draw call, plus the arrows unless the level of detail is
+     * low.
+     */
+    private void drawSelectedCellsInBatch(Canvas canvas) {
+        final boolean isLowDetail = isLowDetail();
+        mCellDrawable.drawSelectedCells(canvas, mGeometry, mSelectedCells, mIsError, isLowDetail);
+        if (isLowDetail || !(mIsSetup || mIsError)) {
+            return;
+        }
+
+        for (int i = 0; i < mSelectedCells.size() - 1; i++) {
+            final int index = mSelectedCells.get(i);
+            Path arrow = mCellDrawable.getArrow(mGeometry, index, mSelectedCells.get(i + 1));
+            if (arrow != null) {
+                mCellDrawable.drawArrow(canvas, mGeometry.getCenterX(index), mGeometry.getCenterY(index), arrow,
+                        mIsError);
+            }
+        }
+    }
+
+    /**
+     * Rebuild {@link #mTrailPath} from the selected cells, it is only needed when the cells are laid out again.
+     */
+    private void rebuildTrailPath() {
+        mTrailPath.rewind();
+        if (!mEngine.isLaidOut()) {
+            return;
+        }
+
+        for (int i = 0; i < mSelectedCells.size(); i++) {
+            appendToTrailPath(mSelectedCells.get(i), i == 0);
+        }
+    }
+
+    private void appendToTrailPath(int index, boolean isFirst) {
+        final float x = mGeometry.getCenterX(index);
+        final float y = mGeometry.getCenterY(index);
+        if (isFirst) {
+            mTrailPath.moveTo(x, y);
+        } else {
+            mTrailPath.lineTo(x, y);
+        }
+    }
+
     @Override
     public boolean onTouchEvent(MotionEvent event) {
         int action = event.getAction();
@@ -301,118 +972,292 @@ public class PatternView extends View {
             }
 
             reset();
+            if (mMetrics != null) {
+                mMetrics.onGestureStart();
+            }
+            // The listeners may be changed by a callback, the array that is iterated is never modified.
+            for (OnPatternProgressListener listener : mProgressListeners) {
+                listener.onStart(this);
+            }
+        }
+
+        if (mMetrics != null) {
+            mMetrics.onTouchEvent();
         }
 
         final float x = event.getX();
         final float y = event.getY();
-        final int touchCellIndex = getCellIndex(x, y);
-        if (touchCellIndex != -1) {
-            if (!mCellStatus[touchCellIndex]) {
-                mCellStatus[touchCellIndex] = true;
-                mSelectedCells.add(touchCellIndex);
-                if (mTouchPoint == null) {
-                    mTouchPoint = new Point();
-                }
-                mTouchPoint.set((int) x, (int) y);
+        final int historySize = event.getHistorySize();
+        if (mIsCoalesceTouchEvents && action == MotionEvent.ACTION_MOVE) {
+            for (int i = 0; i < historySize; i++) {
+                queueTouchSample(event.getHistoricalX(i), event.getHistoricalY(i));
             }
+            queueTouchSample(x, y);
+            return true;
+        }
+
+        // The pending samples must be handled before the gesture starts or finishes.
+        flushTouchSamples();
+        mDirtyRect.setEmpty();
+        for (int i = 0; i < historySize; i++) {
+            processTouchSample(event.getHistoricalX(i), event.getHistoricalY(i));
         }
+        processTouchSample(x, y);
         switch (action) {
             case MotionEvent.ACTION_DOWN:
+                if (mTouchPoint != null) {
+                    mTouchPoint.set((int) x, (int) y);
+                    redraw();
+                }
+                break;
             case MotionEvent.ACTION_MOVE:
                 if (mTouchPoint != null) {
                     mTouchPoint.set((int) x, (int) y);
-                    invalidate();
+                    invalidateTrail();
                 }
+                dispatchTouchMoved(x, y);
                 break;
             case MotionEvent.ACTION_UP:
+                if (mMetrics != null) {
+                    mMetrics.onUp(System.nanoTime());
+                }
                 finish();
                 break;
         }
         return true;
     }
 
+    /**
+     * Invalidate the view for the gesture, the invalidations are counted by the metrics.
+     */
+    private void redraw() {
+        if (mMetrics != null) {
+            mMetrics.onInvalidate();
+        }
+        invalidate();
+    }
+
+    private void redraw(Rect dirty) {
+        if (mMetrics != null) {
+            mMetrics.onInvalidate();
+        }
+        invalidate(dirty);
+    }
+
+    private void processTouchSample(float x, float y) {
+        if (mMetrics == null) {
+            mEngine.processTouchSample(x, y);
+            return;
+        }
+
+        final long start = System.nanoTime();
+        mEngine.processTouchSample(x, y);
+        mMetrics.onHitTest(System.nanoTime() - start);
+    }
+
+    /**
+     * Called by the engine when a cell is selected, the bounds of the changed cells are added to
+     * {@link #mDirtyRect}.
+     */
+    private void onCellAdded(int index, float x, float y) {
+        if (mSelectedCells.size() > 1) {
+            // The previous cell gets the path segment and the direction arrow.
+            unionCellBounds(mSelectedCells.get(mSelectedCells.size() - 2), mDirtyRect);
+        }
+        appendToTrailPath(index, mSelectedCells.size() == 1);
+        unionCellBounds(index, mDirtyRect);
+        if (mBlacklist != null) {
+            mBlacklistState = mBlacklist.next(mBlacklistState, index);
+        }
+        final int position = mSelectedCells.size() - 1;
+        for (OnPatternProgressListener listener : mProgressListeners) {
+            listener.onCellAdded(this, index, position);
+        }
+        if (mTouchPoint == null) {
+            mTouchPoint = new Point();
+        }
+        mTouchPoint.set((int) x, (int) y);
+    }
+
+    private void queueTouchSample(float x, float y) {
+        if (mPendingSampleCount << 1 == mPendingSamples.length) {
+            final float[] samples = new float[mPendingSamples.length << 1];
+            System.arraycopy(mPendingSamples, 0, samples, 0, mPendingSamples.length);
+            mPendingSamples = samples;
+        }
+        mPendingSamples[mPendingSampleCount << 1] = x;
+        mPendingSamples[(mPendingSampleCount << 1) + 1] = y;
+        if (mPendingSampleCount++ == 0) {
+            mFrameCoalescer.schedule();
+        } else {
+            mCoalescedEventCount++;
+        }
+    }
+
+    /**
+     * Hit-test all the pending touch samples in a batch and invalidate the trail once.
+     */
+    private void flushTouchSamples() {
+        if (mPendingSampleCount == 0) {
+            return;
+        }
+
+        mDirtyRect.setEmpty();
+        for (int i = 0; i < mPendingSampleCount; i++) {
+            processTouchSample(mPendingSamples[i << 1], mPendingSamples[(i << 1) + 1]);
+        }
+
+        final int last = (mPendingSampleCount - 1) << 1;
+        mPendingSampleCount = 0;
+        if (mTouchPoint != null) {
+            mTouchPoint.set((int) mPendingSamples[last], (int) mPendingSamples[last + 1]);
+            invalidateTrail();
+        }
+        dispatchTouchMoved(mPendingSamples[last], mPendingSamples[last + 1]);
+    }
+
+    private void dispatchTouchMoved(float x, float y) {
+        for (OnPatternProgressListener listener : mProgressListeners) {
+            listener.onTouchMoved(this, x, y);
+        }
+    }
+
+    /**
+     * Invalidate only the region covered by the previous and the current trail plus the cells that have just been
+     * selected, instead of repainting the whole view for every move event.
+     */
+    private void invalidateTrail() {
+        // The trail drawn in last frame must be erased.
+        mDirtyRect.union(mTrailBounds);
+
+        calcPositionOfCell(mSelectedCells.getLast(), mLastPoint);
+        mTrailBounds.set(Math.min(mLastPoint.x, mTouchPoint.x) - mStrokeWidth,
+                Math.min(mLastPoint.y, mTouchPoint.y) - mStrokeWidth,
+                Math.max(mLastPoint.x, mTouchPoint.x) + mStrokeWidth,
+                Math.max(mLastPoint.y, mTouchPoint.y) + mStrokeWidth);
+        mDirtyRect.union(mTrailBounds);
+        redraw(mDirtyRect);
+    }
+
+    /**
+     * Add the bounds of the specified cell, including the stroke, to the rect.
+     *
+     * @param index the index of the cell
+     * @param rect  the rect that the bounds will be added to
+     */
+    private void unionCellBounds(int index, Rect rect) {
+        calcPositionOfCell(index, mNextPoint);
+        final int halfSize = mGeometry.getCellRadius() + mStrokeWidth;
+        rect.union(mNextPoint.x - halfSize, mNextPoint.y - halfSize, mNextPoint.x + halfSize, mNextPoint.y + halfSize);
+    }
+
     private void reset() {
+        final boolean isCleared = !mSelectedCells.isEmpty();
         mIsError = false;
-        mSelectedCells.clear();
+        mEngine.reset();
+        mTrailPath.rewind();
         mTouchPoint = null;
-        Arrays.fill(mCellStatus, false);
+        mTrailBounds.setEmpty();
+        mPendingSampleCount = 0;
         mIsShowingResult = false;
+        mIsVerifying = false;
+        mVerifyGeneration++;
+        updateBlacklistState();
+        if (isCleared) {
+            dispatchCleared();
+        }
+    }
+
+    private void dispatchCleared() {
+        for (OnPatternProgressListener listener : mProgressListeners) {
+            listener.onCleared(this);
+        }
     }
 
     private void finish() {
         mIsShowingResult = true;
-        if (mFinishListener != null && mTouchPoint != null) {
-            if (!mFinishListener.onFinish(this, mSelectedCells, getPasswordAsString(mSelectedCells))) {
+        if (mAsyncFinishListener != null && mTouchPoint != null) {
+            startVerification();
+            return;
+        }
+
+        if ((mFinishListener != null || mPatternFinishListener != null) && mTouchPoint != null) {
+            final boolean isCorrect = dispatchFinish();
+            if (mMetrics != null) {
+                mMetrics.onGestureEnd(true);
+            }
+            if (!isCorrect) {
                 mIsError = true;
-                invalidate();
+                redraw();
                 resetViewAfterDelay(1000);
             } else {
                 resetViewAfterDelay(1000);
             }
         } else {
+            if (mMetrics != null) {
+                mMetrics.onGestureEnd(false);
+            }
             resetViewAfterDelay(1000);
         }
     }
 
-    private void resetViewAfterDelay(long delay) {
-        postDelayed(new Runnable() {
-            @Override
-            public void run() {
-                reset();
-                invalidate();
-            }
-        }, delay);
-    }
-
-    private double getAngle(int nextIndex) {
-        if (!mIsSetup && !mIsError) {
-            return CellDrawable.ANGEL_NONE;
-        }
-
-        calcPositionOfCell(nextIndex, mNextPoint);
-        final int deltaY = mNextPoint.y - mLastPoint.y;
-        final int deltaX = mNextPoint.x - mLastPoint.x;
-        if (deltaX == 0 && deltaY == 0) {
-            return 0;
+    private boolean dispatchFinish() {
+        if (mPatternFinishListener != null) {
+            return mPatternFinishListener.onFinish(this, mSelectedCells);
         }
+        return mFinishListener.onFinish(this, mSelectedCells.toList(), mSelectedCells.asString());
+    }
 
-        double offset = 0;
-        if (deltaX == 0) {
-            return (deltaY > 0 ? Math.PI : -Math.PI) / 2;
-        } else if (deltaY == 0) {
-            return deltaX > 0 ? 0 : Math.PI;
-        } else if (deltaX < 0 && deltaY > 0) {
-            offset = -Math.PI;
-        } else if (deltaX < 0 && deltaY < 0) {
-            offset = Math.PI;
+    private void startVerification() {
+        mIsVerifying = true;
+        redraw();
+        final Executor executor = mVerifyExecutor != null ? mVerifyExecutor : getDefaultVerifyExecutor();
+        final Verification verification = new Verification(mAsyncFinishListener,
+                new SelectedCells(mSelectedCells.toArray()), mVerifyGeneration);
+        try {
+            executor.execute(verification);
+        } catch (RejectedExecutionException e) {
+            // E.g. the executor has been shut down, the pattern can not be verified.
+            verification.onResult(false);
         }
-
-        return Math.atan((double) deltaY / deltaX) + offset;
     }
 
     /**
-     * Get index of the cell that located in the specified position.
-     *
-     * @param xPosition the x coordinate position
-     * @param yPosition the y coordinate position
-     * @return -1 if no cell located in this position otherwise return the index of the cell.
+     * Apply the result of the verification, called on the main thread.
      */
-    private int getCellIndex(float xPosition, float yPosition) {
-        if (xPosition < mPadding + mCenterOffset || xPosition > getWidth() - mPadding - mCenterOffset
-                || yPosition < mPadding || yPosition > getHeight() - mPadding) {
-            return -1;
+    private void onVerified(int generation, boolean isCorrect) {
+        if (!mIsVerifying || generation != mVerifyGeneration) {
+            // The view has been reset since the verification started.
+            return;
         }
 
-        int yOffset = ((int) yPosition - mPadding) / ((mCellRadius << 1) + mSpacing);
-        if (yOffset >= mCellBaseCount || ((int) yPosition - mPadding) % ((mCellRadius << 1) + mSpacing) > (mCellRadius << 1)) {
-            return -1;
+        mIsVerifying = false;
+        if (mMetrics != null) {
+            mMetrics.onGestureEnd(true);
         }
+        mIsError = !isCorrect;
+        redraw();
+        resetViewAfterDelay(1000);
+    }
 
-        int xOffset = ((int) xPosition - mPadding - mCenterOffset) / ((mCellRadius << 1) + mSpacing);
-        if (xOffset >= mCellBaseCount || ((int) xPosition - mPadding - mCenterOffset) % ((mCellRadius << 1) + mSpacing) > (mCellRadius << 1)) {
-            return -1;
+    private void resetViewAfterDelay(long delay) {
+        // Only the latest reset is kept, so a stale one never clears the next gesture.
+        removeCallbacks(mResetRunnable);
+        postDelayed(mResetRunnable, delay);
+    }
+
+    private static synchronized Executor getDefaultVerifyExecutor() {
+        if (sDefaultVerifyExecutor == null) {
+            sDefaultVerifyExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "PatternView-verify");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
         }
-        return yOffset * mCellBaseCount + xOffset;
+        return sDefaultVerifyExecutor;
     }
 
     /**
@@ -423,28 +1268,11 @@ public class PatternView extends View {
      * @return the original point of the cell.
      */
     private void calcPositionOfCell(int index, Point point) {
-        if (index < 0 || index >= mCellStatus.length) {
+        if (index < 0 || index >= mGeometry.getCellCount()) {
             return;
         }
 
-        final int row = index / mCellBaseCount;
-        final int column = index % mCellBaseCount;
-
-        point.set(mPadding + mCenterOffset + column * ((mCellRadius << 1) + mSpacing) + mCellRadius, mPadding + row * ((mCellRadius << 1) + mSpacing) + mCellRadius);
-    }
-
-    private String getPasswordAsString(List<Integer> selectedCells) {
-        if (selectedCells == null || selectedCells.isEmpty()) {
-            return "";
-        }
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < selectedCells.size() - 1; i++) {
-            sb.append(selectedCells.get(i));
-            sb.append('-');
-        }
-        sb.append(selectedCells.get(selectedCells.size() - 1));
-
-        return sb.toString();
+        point.set((int) mGeometry.getCenterX(index), (int) mGeometry.getCenterY(index));
     }
 
     public static int dip2px(Context context, float dipValue) {
@@ -457,8 +1285,7 @@ public class PatternView extends View {
      * {@link View#onSaveInstanceState}.
      */
     public static class SavedState extends BaseSavedState {
-        List<Integer> selectedCells;
-        boolean[] cellStatus;
+        int[] selectedCells;
 
         SavedState(Parcelable superState) {
             super(superState);
@@ -467,8 +1294,7 @@ public class PatternView extends View {
         @Override
         public void writeToParcel(Parcel out, int flags) {
             super.writeToParcel(out, flags);
-            out.writeList(selectedCells);
-            out.writeBooleanArray(cellStatus);
+            out.writeIntArray(selectedCells);
         }
 
         @SuppressWarnings("hiding")
@@ -485,102 +1311,79 @@ public class PatternView extends View {
 
         private SavedState(Parcel in) {
             super(in);
-            selectedCells = new ArrayList<>();
-            in.readList(selectedCells, Integer.class.getClassLoader());
-            cellStatus = in.createBooleanArray();
+            selectedCells = in.createIntArray();
         }
     }
 
-    private class CellDrawable extends Drawable {
-        static final double ANGEL_NONE = Double.MAX_VALUE;
-
-        private float mPositionX, mPositionY;
-        private double mAngle;
-        private boolean mIsSelected;
-
-        private int mInnerCircleRadius;
-
-        private Path mTrianglePath;
-
-        public CellDrawable() {
-            mTrianglePath = new Path();
-            mAngle = ANGEL_NONE;
-        }
-
-        void init() {
-            mInnerCircleRadius = mCellRadius / 3;
-        }
-
-        void set(float x, float y, boolean isSelected, double angle) {
-            mPositionX = x;
-            mPositionY = y;
-            mIsSelected = isSelected;
-            mAngle = angle;
+    /**
+     * Run the {@link OnAsyncFinishListener} on the executor and post its result back to the main thread.
+     */
+    private class Verification implements Runnable, VerifyCallback {
+        private final OnAsyncFinishListener mListener;
+        private final SelectedCells mResult;
+        private final int mGeneration;
+        private boolean mIsReported;
+
+        Verification(OnAsyncFinishListener listener, SelectedCells result, int generation) {
+            mListener = listener;
+            mResult = result;
+            mGeneration = generation;
         }
 
         @Override
-        public void draw(Canvas canvas) {
-            mPaint.setColor(mIsError && mIsSelected ? mErrorColor : mCellColor);
-            // Draw inner circle
-            if (mIsSelected) {
-                mPaint.setStyle(Paint.Style.FILL);
-                canvas.drawCircle(mPositionX, mPositionY, mInnerCircleRadius, mPaint);
+        public void run() {
+            try {
+                mListener.onFinish(PatternView.this, mResult, this);
+            } catch (RuntimeException e) {
+                // A listener that fails can not accept the pattern. An uncaught exception would kill the process, so
+                // it is reported as an incorrect pattern instead of leaving the view pending.
+                onResult(false);
             }
-            drawCircle(canvas);
-            drawTriangle(canvas);
-        }
-
-        private void drawCircle(Canvas canvas) {
-            mPaint.setStrokeWidth(mStrokeWidth);
-            mPaint.setStyle(Paint.Style.STROKE);
-            canvas.drawCircle(mPositionX, mPositionY, mCellRadius, mPaint);
         }
 
-        private void drawTriangle(Canvas canvas) {
-            if (mAngle == ANGEL_NONE || mCellRadius - mInnerCircleRadius <= mStrokeWidth) {
-                return;
+        @Override
+        public void onResult(final boolean isCorrect) {
+            synchronized (this) {
+                if (mIsReported) {
+                    return;
+                }
+                mIsReported = true;
             }
 
-            mPaint.setStyle(Paint.Style.FILL);
-
-            // The height of the triangle
-            int triangleHeight = (mCellRadius - mStrokeWidth - mInnerCircleRadius) / 3;
-            if (triangleHeight < mStrokeWidth) return;
-            // The distance between the top vertex of the triangle and the cell's original point.
-            int distanceTopVertex = (triangleHeight << 1) + mInnerCircleRadius;
-
-            final double bottomVertexAngle = Math.atan(triangleHeight / Math.sqrt(3) / (distanceTopVertex - triangleHeight));
-            final double distanceBottomVertex = Math.sqrt(Math.pow(triangleHeight, 2) / 3 + Math.pow(distanceTopVertex - triangleHeight, 2));
-
-
-            final float vertexX = mPositionX + distanceTopVertex * (float) Math.cos(mAngle);
-            final float vertexY = mPositionY + distanceTopVertex * (float) Math.sin(mAngle);
-            final float vertexX1 = mPositionX + (float) (distanceBottomVertex * Math.cos(mAngle + bottomVertexAngle));
-            final float vertexY1 = mPositionY + (float) (distanceBottomVertex * Math.sin(mAngle + bottomVertexAngle));
-            final float vertexX2 = mPositionX + (float) (distanceBottomVertex * Math.cos(mAngle - bottomVertexAngle));
-            final float vertexY2 = mPositionY + (float) (distanceBottomVertex * Math.sin(mAngle - bottomVertexAngle));
-
-            mTrianglePath.reset();
-            mTrianglePath.moveTo(vertexX, vertexY);
-            mTrianglePath.lineTo(vertexX1, vertexY1);
-            mTrianglePath.lineTo(vertexX2, vertexY2);
-            mTrianglePath.close();
-            canvas.drawPath(mTrianglePath, mPaint);
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    onVerified(mGeneration, isCorrect);
+                }
+            });
         }
+    }
 
-        @Override
-        public void setAlpha(int i) {
-
+    /**
+     * Handle the pending touch samples on the next display frame, so the view is redrawn at most once per frame.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private class FrameCoalescer implements Choreographer.FrameCallback {
+        private boolean mIsScheduled;
+
+        void schedule() {
+            if (!mIsScheduled) {
+                mIsScheduled = true;
+                Choreographer.getInstance().postFrameCallback(this);
+            }
         }
 
-        @Override
-        public void setColorFilter(ColorFilter colorFilter) {
-
+        void cancel() {
+            if (mIsScheduled) {
+                mIsScheduled = false;
+                Choreographer.getInstance().removeFrameCallback(this);
+            }
         }
 
         @Override
-        public int getOpacity() {
-            return 0;
+        public void doFrame(long frameTimeNanos) {
+            mIsScheduled = false;
+            flushTouchSamples();
         }
     }
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2016 iChengc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cc.library;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The selected cells in the order they are selected, backed by a reusable {@code int} array so selecting a cell
+ * never boxes the index.
+ * <p>
+ * The instance passed to the listeners is owned by the {@link PatternView} and is only valid during the callback,
+ * copy it by {@link #toArray()} or {@link #copyTo(int[], int)} if it is needed later.
+ */
+public final class SelectedCells {
+
+    private int[] mCells;
+    private int mSize;
+
+    /**
+     * The selected result as String, built only when it is requested.
+     */
+    private String mString;
+
+    SelectedCells(int capacity) {
+        mCells = new int[capacity];
+    }
+
+    SelectedCells(int[] cells) {
+        mCells = cells;
+        mSize = cells.length;
+    }
+
+    void ensureCapacity(int capacity) {
+        if (mCells.length < capacity) {
+            mCells = copyOf(mCells, capacity);
+        }
+    }
+
+    void add(int index) {
+        if (mSize == mCells.length) {
+            mCells = copyOf(mCells, Math.max(mSize << 1, 1));
+        }
+        mCells[mSize++] = index;
+        mString = null;
+    }
+
+    void clear() {
+        mSize = 0;
+        mString = null;
+    }
+
+    int getLast() {
+        return mCells[mSize - 1];
+    }
+
+    /**
+     * @return the count of the selected cells.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * Get the index of the cell that was selected at the specified position.
+     *
+     * @param position the position in selection order
+     * @return the index of the cell.
+     */
+    public int get(int position) {
+        if (position < 0 || position >= mSize) {
+            throw new IndexOutOfBoundsException("Position: " + position + ", size: " + mSize);
+        }
+        return mCells[position];
+    }
+
+    /**
+     * Copy the selected cells into the array.
+     *
+     * @param dest   the destination array, it must have room for {@link #size()} cells from {@code offset}
+     * @param offset the offset in the destination array
+     * @return the count of the copied cells.
+     */
+    public int copyTo(int[] dest, int offset) {
+        System.arraycopy(mCells, 0, dest, offset, mSize);
+        return mSize;
+    }
+
+    /**
+     * @return a copy of the selected cells.
+     */
+    public int[] toArray() {
+        return copyOf(mCells, mSize);
+    }
+
+    /**
+     * {@code Arrays.copyOf} is not available before API 9.
+     */
+    private static int[] copyOf(int[] cells, int length) {
+        final int[] copy = new int[length];
+        System.arraycopy(cells, 0, copy, 0, Math.min(cells.length, length));
+        return copy;
+    }
+
+    /**
+     * @return a copy of the selected cells as integer list.
+     */
+    public List<Integer> toList() {
+        List<Integer> list = new ArrayList<Integer>(mSize);
+        for (int i = 0; i < mSize; i++) {
+            list.add(mCells[i]);
+        }
+        return list;
+    }
+
+    /**
+     * Get the selected result as String. the string format is like:"0-1-2-3-4-5-6-7-8-9".
+     *
+     * @return the selected result as String.
+     */
+    public String asString() {
+        if (mString == null) {
+            if (mSize == 0) {
+                mString = "";
+            } else {
+                StringBuilder sb = new StringBuilder(mSize << 1);
+                for (int i = 0; i < mSize - 1; i++) {
+                    sb.append(mCells[i]);
+                    sb.append('-');
+                }
+                sb.append(mCells[mSize - 1]);
+                mString = sb.toString();
+            }
+        }
+        return mString;
+    }
+
+    @Override
+    public String toString() {
+        return asString();
+    }
+}
@@ -0,0 +1,118 @@
+package com.cc.library;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Check that the table based circular hit-testing of {@link CellGeometry} hits the nearest cell within the hit
+ * radius, and the same cells as the arithmetic square hit-testing that {@link PatternView} used before at the
+ * centers.
+ */
+public class CellGeometryTest {
+    private static final int PADDING = 20;
+    private static final int SPACING = 24;
+    private static final int RADIUS = 30;
+
+    @Test
+    public void centersHitTheSameCells() throws Exception {
+        for (int baseCount = 3; baseCount <= 12; baseCount++) {
+            CellGeometry geometry = new CellGeometry();
+            geometry.layout(baseCount, PADDING, PADDING, RADIUS, SPACING);
+            for (int i = 0; i < baseCount * baseCount; i++) {
+                final float x = geometry.getCenterX(i);
+                final float y = geometry.getCenterY(i);
+                assertEquals(i, geometry.getCellIndex(x, y));
+                assertEquals(i, arithmeticCellIndex(baseCount, x, y));
+            }
+        }
+    }
+
+    @Test
+    public void cornersOfTheBoundingSquareMiss() throws Exception {
+        CellGeometry geometry = new CellGeometry();
+        geometry.layout(3, PADDING, PADDING, RADIUS, SPACING);
+        final float offset = RADIUS * 0.9f;
+        for (int i = 0; i < 9; i++) {
+            final float x = geometry.getCenterX(i) + offset;
+            final float y = geometry.getCenterY(i) + offset;
+            // The square hit-testing accepts the corner, the circle does not.
+            assertEquals(i, arithmeticCellIndex(3, x, y));
+            assertEquals(-1, geometry.getCellIndex(x, y));
+        }
+    }
+
+    @Test
+    public void hitRadiusScaleWidensTheCircle() throws Exception {
+        CellGeometry geometry = new CellGeometry();
+        geometry.layout(3, PADDING, PADDING, RADIUS, SPACING);
+        final float x = geometry.getCenterX(4) + RADIUS + 2;
+        final float y = geometry.getCenterY(4);
+        assertEquals(-1, geometry.getCellIndex(x, y));
+        geometry.setHitRadiusScale(1.2f);
+        assertEquals(4, geometry.getCellIndex(x, y));
+        geometry.setHitRadiusScale(1f);
+        assertEquals(-1, geometry.getCellIndex(x, y));
+    }
+
+    @Test
+    public void spacingIsSplitBetweenTheNearestCells() throws Exception {
+        CellGeometry geometry = new CellGeometry();
+        geometry.layout(3, PADDING, PADDING, RADIUS, SPACING);
+        // The circles overlap in the spacing, so the nearest one must win.
+        geometry.setHitRadiusScale(1.5f);
+        final float middle = geometry.getCenterX(3) + RADIUS + (SPACING >> 1);
+        final float y = geometry.getCenterY(3);
+        assertEquals(3, geometry.getCellIndex(middle - 1, y));
+        assertEquals(4, geometry.getCellIndex(middle + 1, y));
+
+        // Sweep the whole grid, half a pixel off the integer ties.
+        final int size = geometry.getGridSize() + (PADDING << 1);
+        for (int py = 0; py < size; py += 3) {
+            for (int px = 0; px < size; px += 3) {
+                final float sampleX = px + 0.5f;
+                final float sampleY = py + 0.5f;
+                assertEquals(nearestCell(geometry, sampleX, sampleY), geometry.getCellIndex(sampleX, sampleY));
+            }
+        }
+    }
+
+    /**
+     * The cell whose center is nearest to the position if it is within the hit radius, by a plain distance scan.
+     */
+    static int nearestCell(CellGeometry geometry, float x, float y) {
+        int nearest = -1;
+        float nearestSquare = geometry.getHitRadius() * geometry.getHitRadius();
+        for (int i = 0; i < geometry.getCellCount(); i++) {
+            final float deltaX = x - geometry.getCenterX(i);
+            final float deltaY = y - geometry.getCenterY(i);
+            final float distanceSquare = deltaX * deltaX + deltaY * deltaY;
+            if (distanceSquare <= nearestSquare) {
+                nearest = i;
+                nearestSquare = distanceSquare;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * The hit-testing of {@link PatternView} before the geometry tables, a cell is hit inside its bounding square.
+     */
+    private static int arithmeticCellIndex(int baseCount, float xPosition, float yPosition) {
+        final int size = (RADIUS << 1) * baseCount + SPACING * (baseCount - 1) + (PADDING << 1);
+        if (xPosition < PADDING || xPosition > size - PADDING || yPosition < PADDING || yPosition > size - PADDING) {
+            return -1;
+        }
+
+        int yOffset = ((int) yPosition - PADDING) / ((RADIUS << 1) + SPACING);
+        if (yOffset >= baseCount || ((int) yPosition - PADDING) % ((RADIUS << 1) + SPACING) > (RADIUS << 1)) {
+            return -1;
+        }
+
+        int xOffset = ((int) xPosition - PADDING) / ((RADIUS << 1) + SPACING);
+        if (xOffset >= baseCount || ((int) xPosition - PADDING) % ((RADIUS << 1) + SPACING) > (RADIUS << 1)) {
+            return -1;
+        }
+        return yOffset * baseCount + xOffset;
+    }
+}
@@ -0,0 +1,66 @@
+package com.cc.library;
+
+import android.graphics.Path;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadows.ShadowPath;
+
+/**
+ * A shadow of {@link Path} that counts the operations that build the path, so a test can tell a path that is rebuilt
+ * every frame from one that is reused or only extended. The operations that the library does not use are not
+ * counted.
+ */
+@Implements(Path.class)
+public class CountingShadowPath extends ShadowPath {
+    private int mOpCount;
+    private int mRewindCount;
+
+    /**
+     * @return the count of the operations since the path was created, including the rewinds.
+     */
+    int getOpCount() {
+        return mOpCount;
+    }
+
+    /**
+     * @return the count of the rewinds and resets since the path was created.
+     */
+    int getRewindCount() {
+        return mRewindCount;
+    }
+
+    @Implementation
+    public void moveTo(float x, float y) {
+        mOpCount++;
+        super.moveTo(x, y);
+    }
+
+    @Implementation
+    public void lineTo(float x, float y) {
+        mOpCount++;
+        super.lineTo(x, y);
+    }
+
+    @Implementation
+    public void close() {
+        mOpCount++;
+    }
+
+    @Implementation
+    public void addCircle(float x, float y, float radius, Path.Direction direction) {
+        mOpCount++;
+    }
+
+    @Implementation
+    public void rewind() {
+        mOpCount++;
+        mRewindCount++;
+    }
+
+    @Implementation
+    public void reset() {
+        mOpCount++;
+        mRewindCount++;
+    }
+}
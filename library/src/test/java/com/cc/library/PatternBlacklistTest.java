@@ -0,0 +1,108 @@
+package com.cc.library;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check the matching and the binary form of {@link PatternBlacklist}.
+ */
+public class PatternBlacklistTest {
+    private static final int[][] COMMON_PATTERNS = {
+            {0, 1, 2, 5, 8},
+            {0, 3, 6, 7, 8},
+            {0, 1, 2, 4, 6, 7, 8},
+            {0, 1, 2},
+            {2, 4, 6},
+    };
+
+    @Test
+    public void matchesOnlyWholePatterns() throws Exception {
+        PatternBlacklist.Builder builder = new PatternBlacklist.Builder(3);
+        for (int[] pattern : COMMON_PATTERNS) {
+            builder.add(pattern);
+        }
+        PatternBlacklist blacklist = builder.build();
+        assertEquals(COMMON_PATTERNS.length, blacklist.getPatternCount());
+        for (int[] pattern : COMMON_PATTERNS) {
+            assertTrue(blacklist.contains(pattern));
+        }
+        assertFalse(blacklist.contains(new int[]{0, 1}));
+        assertFalse(blacklist.contains(new int[]{0, 1, 2, 5}));
+        assertFalse(blacklist.contains(new int[]{0, 1, 2, 5, 8, 7}));
+        assertFalse(blacklist.contains(new int[]{4}));
+        assertFalse(blacklist.contains(new int[0]));
+
+        // Fed cell by cell, the state is known after every cell.
+        int state = blacklist.getInitialState();
+        state = blacklist.next(state, 0);
+        state = blacklist.next(state, 1);
+        state = blacklist.next(state, 2);
+        assertTrue(blacklist.isBlacklisted(state));
+        state = blacklist.next(state, 3);
+        assertEquals(PatternBlacklist.NO_MATCH, state);
+        assertEquals(PatternBlacklist.NO_MATCH, blacklist.next(state, 5));
+    }
+
+    @Test
+    public void binaryRoundTrips() throws Exception {
+        PatternBlacklist blacklist = buildShortPatterns(3, 4);
+        final byte[] data = write(blacklist);
+        PatternBlacklist loaded = PatternBlacklist.read(new ByteArrayInputStream(data));
+        assertEquals(blacklist.getPatternCount(), loaded.getPatternCount());
+        assertEquals(blacklist.getNodeCount(), loaded.getNodeCount());
+        for (Iterator<int[]> it = new PatternCounter(3).iterator(1, 5); it.hasNext(); ) {
+            final int[] pattern = it.next();
+            assertEquals(pattern.length <= 4, loaded.contains(pattern));
+        }
+    }
+
+    @Test
+    public void malformedDataIsRejected() throws Exception {
+        final byte[] data = write(buildShortPatterns(3, 2));
+        final byte[][] malformed = {
+                new byte[0],
+                Arrays.copyOf(data, data.length - 1),
+                withByte(data, 0, 0),
+                withByte(data, 4, 0),
+                // The first child count of the root.
+                withByte(data, 9, 10),
+        };
+        for (byte[] bytes : malformed) {
+            try {
+                PatternBlacklist.read(new ByteArrayInputStream(bytes));
+                throw new AssertionError("Accepted malformed data");
+            } catch (IOException e) {
+                // Expected.
+            }
+        }
+    }
+
+    private static PatternBlacklist buildShortPatterns(int baseCount, int maxLength) {
+        PatternBlacklist.Builder builder = new PatternBlacklist.Builder(baseCount);
+        for (Iterator<int[]> it = new PatternCounter(baseCount).iterator(1, maxLength); it.hasNext(); ) {
+            builder.add(it.next());
+        }
+        return builder.build();
+    }
+
+    private static byte[] write(PatternBlacklist blacklist) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        blacklist.write(out);
+        return out.toByteArray();
+    }
+
+    private static byte[] withByte(byte[] data, int index, int value) {
+        final byte[] copy = data.clone();
+        copy[index] = (byte) value;
+        return copy;
+    }
+}
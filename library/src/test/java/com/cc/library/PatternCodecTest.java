@@ -0,0 +1,144 @@
+package com.cc.library;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Check that {@link PatternCodec} round-trips the patterns of every supported grid size.
+ */
+public class PatternCodecTest {
+    private static final int PATTERNS_PER_GRID = 200;
+
+    @Test
+    public void encodeRoundTrips() throws Exception {
+        Random random = new Random(0);
+        for (int baseCount = 1; baseCount <= PatternCodec.MAX_BASE_COUNT; baseCount++) {
+            for (int i = 0; i < PATTERNS_PER_GRID; i++) {
+                final int[] cells = randomPattern(random, baseCount);
+                final byte[] data = PatternCodec.encode(baseCount, cells);
+                assertEquals(baseCount, PatternCodec.decodeBaseCount(data));
+                assertArrayEquals(cells, PatternCodec.decode(data));
+            }
+        }
+    }
+
+    @Test
+    public void smallGridsArePackedInNibbles() throws Exception {
+        final int[] cells = {0, 1, 2, 5, 8, 7, 6, 3, 4};
+        final byte[] data = PatternCodec.encode(3, cells);
+        assertEquals(6, data.length);
+        assertEquals(0x80 | (2 << 5) | 9, data[0] & 0xff);
+        assertEquals(0x01, data[1]);
+        assertEquals(0x40, data[5]);
+    }
+
+    @Test
+    public void malformedDataIsRejected() throws Exception {
+        final byte[][] malformed = {
+                {},
+                {(byte) 0x83, 0x01},
+                {(byte) 0xa2, 0x11},
+                {3},
+                {5, (byte) 0x81},
+                {5, 30},
+                {0, 5},
+                {5, (byte) 0x81, 0x00},
+        };
+        for (byte[] data : malformed) {
+            try {
+                PatternCodec.decode(data);
+                throw new AssertionError("Accepted " + Arrays.toString(data));
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+        }
+    }
+
+    @Test
+    public void rankIsBijectiveFor3x3() throws Exception {
+        final long count = PatternCodec.getPatternCount(3);
+        assertEquals(986410, count);
+        for (long rank = 0; rank < count; rank++) {
+            assertEquals(rank, PatternCodec.rank(3, PatternCodec.unrank(3, rank)));
+        }
+        assertArrayEquals(new int[0], PatternCodec.unrank(3, 0));
+        assertArrayEquals(new int[]{0}, PatternCodec.unrank(3, 1));
+        assertArrayEquals(new int[]{8, 7, 6, 5, 4, 3, 2, 1, 0}, PatternCodec.unrank(3, count - 1));
+        try {
+            PatternCodec.unrank(3, count);
+            throw new AssertionError("Accepted rank " + count);
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void rankRoundTrips() throws Exception {
+        Random random = new Random(1);
+        for (int baseCount = 1; baseCount <= 16; baseCount++) {
+            for (int i = 0; i < PATTERNS_PER_GRID; i++) {
+                int[] cells = randomPattern(random, baseCount);
+                while (true) {
+                    try {
+                        final long rank = PatternCodec.rank(baseCount, cells);
+                        assertArrayEquals(cells, PatternCodec.unrank(baseCount, rank));
+                        break;
+                    } catch (IllegalArgumentException e) {
+                        // The rank of a long pattern on a large grid does not fit in a long.
+                        cells = Arrays.copyOf(cells, cells.length - 1);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void unrankRejectsRanksThatRankRejects() throws Exception {
+        // Find the longest length whose ranks all fit in a long on a 5x5 grid.
+        final int baseCount = 5;
+        long offset = 0;
+        int length = 0;
+        while (true) {
+            final long count = PatternCodec.getPatternCount(baseCount, length);
+            if (count < 0 || offset > Long.MAX_VALUE - count) {
+                break;
+            }
+            offset += count;
+            length++;
+        }
+        final long lastRank = offset - 1;
+        final int[] last = PatternCodec.unrank(baseCount, lastRank);
+        assertEquals(length - 1, last.length);
+        assertEquals(lastRank, PatternCodec.rank(baseCount, last));
+
+        for (long rank : new long[]{lastRank + 1, Long.MAX_VALUE}) {
+            try {
+                PatternCodec.unrank(baseCount, rank);
+                throw new AssertionError("Accepted rank " + rank);
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+        }
+    }
+
+    private static int[] randomPattern(Random random, int baseCount) {
+        final int cellCount = baseCount * baseCount;
+        final int[] shuffled = new int[cellCount];
+        for (int i = 0; i < cellCount; i++) {
+            shuffled[i] = i;
+        }
+        final int length = random.nextInt(Math.min(cellCount, 64) + 1);
+        for (int i = 0; i < length; i++) {
+            final int j = i + random.nextInt(cellCount - i);
+            final int cell = shuffled[j];
+            shuffled[j] = shuffled[i];
+            shuffled[i] = cell;
+        }
+        return Arrays.copyOf(shuffled, length);
+    }
+}
@@ -0,0 +1,75 @@
+package com.cc.library;
+
+import org.junit.Test;
+
+import java.util.Iterator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Check the counts of {@link PatternCounter} against the known counts and against each other.
+ */
+public class PatternCounterTest {
+    /**
+     * The well known counts of the 3x3 patterns by length.
+     */
+    private static final long[] COUNTS_3X3 = {1, 9, 56, 320, 1624, 7152, 26016, 72912, 140704, 140704};
+
+    @Test
+    public void counts3x3() throws Exception {
+        PatternCounter counter = new PatternCounter(3);
+        assertArrayEquals(COUNTS_3X3, counter.countByLength());
+        assertEquals(389112, PatternCounter.sum(counter.countByLength(), 4, 9));
+        counter.setParallelism(1);
+        assertArrayEquals(COUNTS_3X3, counter.countByLength());
+    }
+
+    @Test
+    public void sparseMatchesDense() throws Exception {
+        for (int baseCount = 2; baseCount <= 4; baseCount++) {
+            PatternCounter counter = new PatternCounter(baseCount);
+            final long[] dense = counter.countByLength();
+            final long[] sparse = counter.countByLength(baseCount * baseCount - 1);
+            for (int length = 0; length < sparse.length; length++) {
+                assertEquals(dense[length], sparse[length]);
+            }
+        }
+    }
+
+    @Test
+    public void iteratorMatchesCounts() throws Exception {
+        PatternCounter counter = new PatternCounter(3);
+        final long[] counts = new long[10];
+        Iterator<int[]> iterator = counter.iterator(1, 9);
+        int[] previous = null;
+        while (iterator.hasNext()) {
+            final int[] pattern = iterator.next();
+            counts[pattern.length]++;
+            PatternCodec.checkPattern(3, pattern);
+            if (previous != null) {
+                assertEquals(-1, Long.signum(compare(previous, pattern)));
+            }
+            previous = pattern;
+        }
+        counts[0] = 1;
+        assertArrayEquals(COUNTS_3X3, counts);
+
+        long fromFirstCells = 0;
+        for (int cell = 0; cell < 9; cell++) {
+            for (Iterator<int[]> it = counter.iterator(cell, 4, 4); it.hasNext(); it.next()) {
+                fromFirstCells++;
+            }
+        }
+        assertEquals(COUNTS_3X3[4], fromFirstCells);
+    }
+
+    private static int compare(int[] a, int[] b) {
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            if (a[i] != b[i]) {
+                return a[i] - b[i];
+            }
+        }
+        return a.length - b.length;
+    }
+}
@@ -0,0 +1,81 @@
+package com.cc.library;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check that {@link PatternEngine} lays out any grid in any size without crashing, shrinking the spacing and the
+ * cells to fit.
+ */
+public class PatternEngineLayoutTest {
+    private static final int SPACING = 96;
+
+    @Test
+    public void cellsAlwaysFit() throws Exception {
+        for (int baseCount = 1; baseCount <= 12; baseCount++) {
+            for (int preferredRadius = -1; preferredRadius <= 60; preferredRadius += 61) {
+                for (int size = 0; size <= 600; size += 7) {
+                    for (int padding = 0; padding <= 40; padding += 20) {
+                        checkLayout(baseCount, preferredRadius, size, padding);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void roomyGridsKeepThePreferredSizes() throws Exception {
+        PatternEngine engine = new PatternEngine(3);
+        engine.setPreferredSpacing(SPACING);
+        assertTrue(engine.layout(1080, 1920, 0));
+        assertEquals(SPACING, engine.getGeometry().getSpacing());
+        assertEquals((1080 - SPACING * 2) / 6, engine.getGeometry().getCellRadius());
+
+        engine.setPreferredCellRadius(60);
+        assertTrue(engine.layout(1080, 1920, 0));
+        assertEquals(60, engine.getGeometry().getCellRadius());
+        assertEquals(SPACING, engine.getGeometry().getSpacing());
+    }
+
+    @Test
+    public void tinyGridsAreNotLaidOut() throws Exception {
+        PatternEngine engine = new PatternEngine(10);
+        engine.setPreferredSpacing(SPACING);
+        assertTrue(engine.layout(300, 300, 0));
+        assertTrue(engine.isLaidOut());
+        // The spacing shrinks to the diameter of the cells instead of crashing.
+        assertTrue(engine.getGeometry().getSpacing() < SPACING);
+
+        assertFalse(engine.layout(300, 300, 145));
+        assertFalse(engine.isLaidOut());
+        assertEquals(-1, engine.getCellIndex(150, 150));
+        engine.touchDown(150, 150);
+        assertEquals(0, engine.touchUp(150, 150).size());
+    }
+
+    private static void checkLayout(int baseCount, int preferredRadius, int size, int padding) {
+        PatternEngine engine = new PatternEngine(baseCount);
+        engine.setPreferredSpacing(SPACING);
+        engine.setPreferredCellRadius(preferredRadius);
+        engine.layout(size, size + 100, padding);
+        if (!engine.isLaidOut()) {
+            // There is no room even for the smallest cells.
+            assertTrue(size - (padding << 1) < (baseCount << 1));
+            return;
+        }
+
+        CellGeometry geometry = engine.getGeometry();
+        final String layout = baseCount + "x" + baseCount + " in " + size + " padded " + padding;
+        assertTrue(layout, geometry.getCellRadius() >= 1);
+        assertTrue(layout, geometry.getSpacing() >= 0 && geometry.getSpacing() <= SPACING);
+        assertTrue(layout, geometry.getGridSize() <= size - (padding << 1));
+        assertTrue(layout, geometry.getLeft() >= padding && geometry.getTop() >= padding);
+        assertTrue(layout, geometry.getLeft() + geometry.getGridSize() <= size - padding);
+        for (int i = 0; i < baseCount * baseCount; i++) {
+            assertEquals(layout, i, engine.getCellIndex(geometry.getCenterX(i), geometry.getCenterY(i)));
+        }
+    }
+}
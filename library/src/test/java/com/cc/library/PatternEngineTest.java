@@ -0,0 +1,78 @@
+package com.cc.library;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Check that a swipe between two touch samples selects every cell whose hit circle the segment crosses, in the
+ * order they are crossed.
+ */
+public class PatternEngineTest {
+
+    @Test
+    public void segmentsSelectTheCrossedCells() throws Exception {
+        final Random random = new Random(42);
+        for (int baseCount = 3; baseCount <= 12; baseCount += 3) {
+            for (float scale = 0.5f; scale <= 1.5f; scale += 0.5f) {
+                PatternEngine engine = new PatternEngine(baseCount);
+                engine.setPreferredSpacing(40);
+                engine.setHitRadiusScale(scale);
+                engine.layout(900, 900, 20);
+                for (int round = 0; round < 200; round++) {
+                    final float fromX = random.nextFloat() * 900;
+                    final float fromY = random.nextFloat() * 900;
+                    final float toX = random.nextFloat() * 900;
+                    final float toY = random.nextFloat() * 900;
+                    engine.touchDown(fromX, fromY);
+                    assertArrayEquals(crossedCells(engine, fromX, fromY, toX, toY),
+                            engine.touchUp(toX, toY).toArray());
+                }
+            }
+        }
+    }
+
+    /**
+     * Test every cell against the segment, the cell hit by the first sample comes first.
+     */
+    private static int[] crossedCells(PatternEngine engine, float fromX, float fromY, float toX, float toY) {
+        final CellGeometry geometry = engine.getGeometry();
+        final int cellCount = geometry.getCellCount();
+        final int first = CellGeometryTest.nearestCell(geometry, fromX, fromY);
+        final int[] cells = new int[cellCount];
+        final float[] projections = new float[cellCount];
+        int count = 0;
+        final float deltaX = toX - fromX;
+        final float deltaY = toY - fromY;
+        final float lengthSquare = deltaX * deltaX + deltaY * deltaY;
+        final float radiusSquare = geometry.getHitRadius() * geometry.getHitRadius();
+        for (int i = 0; i < cellCount; i++) {
+            final float centerX = geometry.getCenterX(i);
+            final float centerY = geometry.getCenterY(i);
+            float projection = ((centerX - fromX) * deltaX + (centerY - fromY) * deltaY) / lengthSquare;
+            projection = Math.max(0, Math.min(1, projection));
+            final float distanceX = fromX + projection * deltaX - centerX;
+            final float distanceY = fromY + projection * deltaY - centerY;
+            if (i != first && distanceX * distanceX + distanceY * distanceY <= radiusSquare) {
+                // Insertion sort by the projection, the earlier cell wins a tie.
+                int j = count++;
+                while (j > 0 && projections[j - 1] > projection) {
+                    cells[j] = cells[j - 1];
+                    projections[j] = projections[j - 1];
+                    j--;
+                }
+                cells[j] = i;
+                projections[j] = projection;
+            }
+        }
+
+        final int[] result = new int[first == -1 ? count : count + 1];
+        if (first != -1) {
+            result[0] = first;
+        }
+        System.arraycopy(cells, 0, result, result.length - count, count);
+        return result;
+    }
+}
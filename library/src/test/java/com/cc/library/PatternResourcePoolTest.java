@@ -0,0 +1,190 @@
+package com.cc.library;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check the reference counting and the eviction of {@link PatternResourcePool}, and that identical grids share their
+ * resources.
+ */
+public class PatternResourcePoolTest {
+    private static final int SIZE = 100;
+
+    private static final PatternResourcePool.Loader<TestResource> LOADER =
+            new PatternResourcePool.Loader<TestResource>() {
+                @Override
+                public TestResource load() {
+                    return new TestResource();
+                }
+            };
+
+    @Test
+    public void identicalKeysShareTheResource() throws Exception {
+        PatternResourcePool pool = new PatternResourcePool(10 * SIZE);
+        TestResource first = pool.acquire(key(1), LOADER);
+        TestResource second = pool.acquire(key(1), LOADER);
+        assertSame(first, second);
+        assertNotSame(first, pool.acquire(key(2), LOADER));
+        assertEquals(2, pool.getMissCount());
+        assertEquals(1, pool.getHitCount());
+        assertEquals(2, pool.getResourceCount());
+        assertEquals(2 * SIZE, pool.getSize());
+    }
+
+    @Test
+    public void resourcesInUseAreNeverEvicted() throws Exception {
+        PatternResourcePool pool = new PatternResourcePool(0);
+        TestResource resource = pool.acquire(key(1), LOADER);
+        pool.acquire(key(1), LOADER);
+        pool.evictUnused();
+        assertEquals(1, pool.getResourceCount());
+
+        // Still used by the second reference.
+        pool.release(resource);
+        assertEquals(1, pool.getResourceCount());
+        assertFalse(resource.mIsRecycled);
+
+        pool.release(resource);
+        assertEquals(0, pool.getResourceCount());
+        assertEquals(0, pool.getSize());
+        assertEquals(1, pool.getEvictionCount());
+        assertTrue(resource.mIsRecycled);
+
+        try {
+            pool.release(resource);
+            throw new AssertionError("Released a resource that is not acquired");
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvictedFirst() throws Exception {
+        PatternResourcePool pool = new PatternResourcePool(3 * SIZE);
+        final TestResource[] resources = new TestResource[3];
+        for (int i = 0; i < resources.length; i++) {
+            resources[i] = pool.acquire(key(i), LOADER);
+            pool.release(resources[i]);
+        }
+        // Use the eldest one again, the second one becomes the least recently used.
+        pool.release(pool.acquire(key(0), LOADER));
+        pool.release(pool.acquire(key(3), LOADER));
+        assertEquals(3, pool.getResourceCount());
+        assertTrue(resources[1].mIsRecycled);
+        assertFalse(resources[0].mIsRecycled);
+        assertFalse(resources[2].mIsRecycled);
+
+        pool.setMemoryBudget(SIZE);
+        assertEquals(1, pool.getResourceCount());
+        assertTrue(resources[0].mIsRecycled);
+        assertTrue(resources[2].mIsRecycled);
+        assertEquals(SIZE, pool.getSize());
+    }
+
+    @Test
+    public void loaderRunsOutsideTheLock() throws Exception {
+        final PatternResourcePool pool = new PatternResourcePool(10 * SIZE);
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch inserted = new CountDownLatch(1);
+        final TestResource[] slow = new TestResource[2];
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                slow[1] = pool.acquire(key(1), new PatternResourcePool.Loader<TestResource>() {
+                    @Override
+                    public TestResource load() {
+                        slow[0] = new TestResource();
+                        loading.countDown();
+                        try {
+                            inserted.await();
+                        } catch (InterruptedException e) {
+                            throw new AssertionError(e);
+                        }
+                        return slow[0];
+                    }
+                });
+            }
+        };
+        thread.start();
+        loading.await();
+
+        // Neither a different key nor the same key waits for the slow loader.
+        pool.acquire(key(2), LOADER);
+        TestResource fast = pool.acquire(key(1), LOADER);
+        inserted.countDown();
+        thread.join();
+
+        // The resource inserted first wins, the other one is recycled.
+        assertSame(fast, slow[1]);
+        assertTrue(slow[0].mIsRecycled);
+        assertFalse(fast.mIsRecycled);
+        assertEquals(2, pool.getResourceCount());
+        assertEquals(2 * SIZE, pool.getSize());
+        pool.release(fast);
+        pool.release(fast);
+        pool.evictUnused();
+        assertEquals(1, pool.getResourceCount());
+    }
+
+    @Test
+    public void identicalGridsShareTheHitTable() throws Exception {
+        PatternResourcePool pool = PatternResourcePool.getDefault();
+        final int missCount = pool.getMissCount();
+        final PatternEngine[] engines = new PatternEngine[50];
+        for (int i = 0; i < engines.length; i++) {
+            engines[i] = newEngine();
+            final CellGeometry geometry = engines[i].getGeometry();
+            assertEquals(5, engines[i].getCellIndex(geometry.getCenterX(5), geometry.getCenterY(5)));
+        }
+        assertTrue(pool.getMissCount() - missCount <= 1);
+
+        // The table is held by the engines, so it is not evicted.
+        pool.evictUnused();
+        final int heldMissCount = pool.getMissCount();
+        PatternEngine engine = newEngine();
+        assertEquals(heldMissCount, pool.getMissCount());
+
+        // Released by all the engines, it is evicted and built again by the next hit test.
+        engine.releaseResources();
+        for (PatternEngine released : engines) {
+            released.releaseResources();
+        }
+        pool.evictUnused();
+        final CellGeometry geometry = engine.getGeometry();
+        assertEquals(5, engine.getCellIndex(geometry.getCenterX(5), geometry.getCenterY(5)));
+        assertEquals(heldMissCount + 1, pool.getMissCount());
+        engine.releaseResources();
+    }
+
+    private static PatternEngine newEngine() {
+        PatternEngine engine = new PatternEngine(4);
+        engine.setPreferredSpacing(48);
+        engine.layout(733, 733, 11);
+        return engine;
+    }
+
+    private static PatternResourcePool.Key key(int id) {
+        return new PatternResourcePool.Key(PatternResourcePool.TYPE_SPRITES, id);
+    }
+
+    private static final class TestResource extends PatternResourcePool.Resource {
+        private boolean mIsRecycled;
+
+        @Override
+        long getSize() {
+            return SIZE;
+        }
+
+        @Override
+        void recycle() {
+            mIsRecycled = true;
+        }
+    }
+}
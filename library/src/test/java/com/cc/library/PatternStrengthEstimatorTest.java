@@ -0,0 +1,49 @@
+package com.cc.library;
+
+import org.junit.Test;
+
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check the ordering of the estimations of {@link PatternStrengthEstimator}.
+ */
+public class PatternStrengthEstimatorTest {
+
+    @Test
+    public void predictableMovesScoreLower() throws Exception {
+        PatternStrengthEstimator estimator = PatternStrengthEstimator.get(3);
+        // A straight line is weaker than the same cells in a zigzag.
+        assertTrue(estimator.estimate(new int[]{0, 1, 2}) < estimator.estimate(new int[]{1, 0, 2}));
+        // The top-left start is the most popular.
+        assertTrue(estimator.estimate(new int[]{0}) < estimator.estimate(new int[]{8}));
+        assertTrue(estimator.estimate(new int[]{8}) < estimator.estimate(new int[]{4}));
+        // Knight moves are harder to guess than moves to the neighbours.
+        assertTrue(estimator.estimate(new int[]{4, 3, 0}) < estimator.estimate(new int[]{4, 3, 2}));
+        // The "Z" is weak, a long knight-heavy pattern is strong.
+        assertEquals(PatternStrengthEstimator.STRENGTH_WEAK,
+                PatternStrengthEstimator.getStrength(estimator.estimate(new int[]{0, 1, 2, 4, 6, 7, 8})));
+        assertEquals(PatternStrengthEstimator.STRENGTH_STRONG,
+                PatternStrengthEstimator.getStrength(estimator.estimate(new int[]{1, 8, 3, 2, 7, 0, 5, 6})));
+    }
+
+    @Test
+    public void meterMatchesEstimate() throws Exception {
+        PatternStrengthEstimator estimator = PatternStrengthEstimator.get(3);
+        PatternStrengthEstimator.Meter meter = estimator.newMeter();
+        for (Iterator<int[]> it = new PatternCounter(3).iterator(1, 5); it.hasNext(); ) {
+            final int[] pattern = it.next();
+            meter.reset();
+            float previousBits = 0;
+            for (int cell : pattern) {
+                meter.add(cell);
+                assertTrue(meter.getBits() > previousBits);
+                previousBits = meter.getBits();
+            }
+            assertEquals(pattern.length, meter.size());
+            assertEquals(estimator.estimate(pattern), meter.getBits(), 0f);
+        }
+    }
+}
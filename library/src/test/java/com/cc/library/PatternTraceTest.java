@@ -0,0 +1,158 @@
+package com.cc.library;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Replay synthetic swipes through {@link PatternTraceReplayer} and check that the engine selects the patterns they
+ * were drawn from.
+ */
+public class PatternTraceTest {
+    private static final PatternTrace.Config CONFIG =
+            new PatternTrace.Config(3, 720, 1080, 20, -1, 100, 1f, true);
+    private static final int STEPS_PER_MOVE = 6;
+    private static final long SAMPLE_INTERVAL_MICROS = 8000;
+
+    @Test
+    public void replaysExpectedPatterns() throws Exception {
+        final byte[] trace = swipeAll(CONFIG, 1, 6, false);
+        PatternTraceReplayer replayer = new PatternTraceReplayer();
+        PatternTraceReplayer.Result result = replayer.replay(new ByteArrayInputStream(trace));
+        assertEquals(result.getGestureCount(), result.getCheckedCount());
+        assertEquals(0, result.getMismatchCount());
+        assertEquals(countPatterns(3, 1, 6), result.getGestureCount());
+    }
+
+    @Test
+    public void reportsMismatches() throws Exception {
+        final byte[] trace = swipeAll(CONFIG, 2, 2, true);
+        PatternTraceReplayer replayer = new PatternTraceReplayer();
+        final int[] mismatchCount = new int[1];
+        replayer.setOnMismatchListener(new PatternTraceReplayer.OnMismatchListener() {
+            @Override
+            public void onMismatch(int gesture, int[] expected, int[] actual) {
+                mismatchCount[0]++;
+                assertEquals(expected[0], actual[1]);
+                assertEquals(expected[1], actual[0]);
+            }
+        });
+        PatternTraceReplayer.Result result = replayer.replay(new ByteArrayInputStream(trace));
+        assertEquals(result.getGestureCount(), result.getMismatchCount());
+        assertEquals(result.getMismatchCount(), mismatchCount[0]);
+    }
+
+    @Test
+    public void readerRoundTrips() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PatternTrace.Config config = new PatternTrace.Config(4, 300, 200, 0, 12, 0, 1.5f, false);
+        PatternTrace.Writer writer = new PatternTrace.Writer(out, config);
+        writer.writeSample(PatternTrace.TYPE_DOWN, 5000000000L, 1.5f, -2f);
+        writer.writeSample(PatternTrace.TYPE_UP, 5000016000L, 3f, 4f);
+        writer.writeExpected(new int[]{15, 0, 200});
+        writer.close();
+
+        PatternTrace.Reader reader = new PatternTrace.Reader(new ByteArrayInputStream(out.toByteArray()));
+        PatternTrace.Config read = reader.getConfig();
+        assertArrayEquals(new int[]{4, 300, 200, 0, 12, 0},
+                new int[]{read.baseCount, read.width, read.height, read.padding, read.cellRadius, read.spacing});
+        assertEquals(1.5f, read.hitRadiusScale, 0f);
+        assertEquals(false, read.autoSelectIntermediate);
+        assertEquals(PatternTrace.TYPE_DOWN, reader.next());
+        assertEquals(0, reader.getTimeMicros());
+        assertEquals(-2f, reader.getY(), 0f);
+        assertEquals(PatternTrace.TYPE_UP, reader.next());
+        assertEquals(16000, reader.getTimeMicros());
+        assertEquals(3f, reader.getX(), 0f);
+        assertEquals(PatternTrace.TYPE_EXPECT, reader.next());
+        assertEquals(3, reader.getExpectedCount());
+        assertEquals(200, reader.getExpectedCell(2));
+        assertEquals(PatternTrace.TYPE_END, reader.next());
+        assertEquals(PatternTrace.TYPE_END, reader.next());
+
+        final byte[] data = out.toByteArray();
+        final byte[][] malformed = {
+                new byte[0],
+                Arrays.copyOf(data, data.length - 1),
+                withByte(data, 0, 0),
+                // The type of the first record.
+                withByte(data, 17, 9),
+        };
+        for (byte[] bytes : malformed) {
+            try {
+                PatternTrace.Reader malformedReader = new PatternTrace.Reader(new ByteArrayInputStream(bytes));
+                while (malformedReader.next() != PatternTrace.TYPE_END) {
+                    // Read to the end.
+                }
+                throw new AssertionError("Accepted malformed trace");
+            } catch (IOException e) {
+                // Expected.
+            }
+        }
+    }
+
+    /**
+     * Write a trace that swipes through the centers of the cells of every pattern.
+     *
+     * @param swapFirstTwo expect the first two cells in the wrong order.
+     */
+    private static byte[] swipeAll(PatternTrace.Config config, int minLength, int maxLength, boolean swapFirstTwo)
+            throws IOException {
+        PatternEngine engine = config.newEngine();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PatternTrace.Writer writer = new PatternTrace.Writer(out, config);
+        long time = 0;
+        for (Iterator<int[]> it = new PatternCounter(config.baseCount).iterator(minLength, maxLength);
+             it.hasNext(); ) {
+            final int[] pattern = it.next();
+            float x = engine.getCellCenterX(pattern[0]);
+            float y = engine.getCellCenterY(pattern[0]);
+            writer.writeSample(PatternTrace.TYPE_DOWN, time, x, y);
+            for (int i = 1; i < pattern.length; i++) {
+                final float toX = engine.getCellCenterX(pattern[i]);
+                final float toY = engine.getCellCenterY(pattern[i]);
+                for (int step = 1; step <= STEPS_PER_MOVE; step++) {
+                    time += SAMPLE_INTERVAL_MICROS;
+                    writer.writeSample(PatternTrace.TYPE_MOVE, time, x + (toX - x) * step / STEPS_PER_MOVE,
+                            y + (toY - y) * step / STEPS_PER_MOVE);
+                }
+                x = toX;
+                y = toY;
+            }
+            time += SAMPLE_INTERVAL_MICROS;
+            writer.writeSample(PatternTrace.TYPE_UP, time, x, y);
+            if (swapFirstTwo) {
+                final int first = pattern[0];
+                pattern[0] = pattern[1];
+                pattern[1] = first;
+            }
+            writer.writeExpected(pattern);
+            // The fingers lift between the gestures.
+            time += 50 * SAMPLE_INTERVAL_MICROS;
+        }
+        writer.close();
+        return out.toByteArray();
+    }
+
+    private static int countPatterns(int baseCount, int minLength, int maxLength) {
+        int count = 0;
+        for (Iterator<int[]> it = new PatternCounter(baseCount).iterator(minLength, maxLength); it.hasNext(); ) {
+            it.next();
+            count++;
+        }
+        return count;
+    }
+
+    private static byte[] withByte(byte[] data, int index, int value) {
+        final byte[] copy = data.clone();
+        copy[index] = (byte) value;
+        return copy;
+    }
+}
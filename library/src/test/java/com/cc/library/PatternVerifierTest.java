@@ -0,0 +1,59 @@
+package com.cc.library;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check the hashing of {@link PatternVerifier}, the latency of the iteration counts is measured by
+ * {@code VerificationBenchmark}.
+ */
+public class PatternVerifierTest {
+    private static final int[] PATTERN = {0, 1, 2, 4, 6, 7, 8};
+
+    @Test
+    public void verifyMatchesOnlyTheHashedPattern() throws Exception {
+        PatternVerifier verifier = new PatternVerifier(PatternVerifier.DEFAULT_ALGORITHM, 1000);
+        final String hash = verifier.hash(3, PATTERN);
+        assertTrue(verifier.verify(hash, 3, PATTERN));
+        assertTrue(verifier.verify(hash, 3, new SelectedCells(PATTERN.clone())));
+        assertFalse(verifier.verify(hash, 3, new int[]{0, 1, 2, 4, 6, 8, 7}));
+        assertFalse(verifier.verify(hash, 4, PATTERN));
+        assertFalse(verifier.verify(hash, 3, new int[0]));
+
+        // The salt is random, the same pattern gets another hash.
+        assertFalse(hash.equals(verifier.hash(3, PATTERN)));
+    }
+
+    @Test
+    public void needsRehashWhenIterationsIncrease() throws Exception {
+        final String hash = new PatternVerifier(PatternVerifier.DEFAULT_ALGORITHM, 1000).hash(3, PATTERN);
+        PatternVerifier verifier = new PatternVerifier(PatternVerifier.DEFAULT_ALGORITHM, 2000);
+        assertTrue(verifier.needsRehash(hash));
+        assertTrue(verifier.verify(hash, 3, PATTERN));
+        assertFalse(verifier.needsRehash(verifier.hash(3, PATTERN)));
+    }
+
+    @Test
+    public void malformedHashIsRejected() throws Exception {
+        PatternVerifier verifier = new PatternVerifier();
+        final String[] malformed = {"", "1:PBKDF2WithHmacSHA1:1000:00", "2:PBKDF2WithHmacSHA1:1000:00:00",
+                "1:PBKDF2WithHmacSHA1:x:00:00", "1:PBKDF2WithHmacSHA1:1000:0g:00"};
+        for (String hash : malformed) {
+            try {
+                verifier.verify(hash, 3, PATTERN);
+                throw new AssertionError("Accepted " + hash);
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+        }
+    }
+
+    @Test
+    public void encodingSeparatesLargeGrids() throws Exception {
+        assertEquals("03000102", new String(PatternVerifier.encode(3, new int[]{0, 1, 2})));
+        assertEquals("1100ff0120", new String(PatternVerifier.encode(17, new int[]{255, 288})));
+    }
+}
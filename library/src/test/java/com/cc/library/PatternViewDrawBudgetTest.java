@@ -0,0 +1,248 @@
+package com.cc.library;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Draw scripted gestures into a {@link RecordingCanvas} and fail if a frame of {@link PatternView} costs more than
+ * its budget, so the cost of a frame stays bounded as features are added to {@code onDraw}.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21, shadows = CountingShadowPath.class)
+public class PatternViewDrawBudgetTest {
+    private static final int SIZE = 1080;
+    private static final int STEPS_PER_MOVE = 4;
+
+    /**
+     * The idle cells are a single cached layer, whatever the grid size is.
+     */
+    private static final int IDLE_FRAME_DRAW_OPS = 1;
+
+    /**
+     * The idle layer, the trail and the line to the finger, plus the sprite and the arrow of every selected cell.
+     */
+    private static final int FRAME_DRAW_OPS = 3;
+    private static final int DRAW_OPS_PER_SELECTED_CELL = 2;
+
+    /**
+     * The trail paint and the arrow paint, the sprites are drawn without a paint.
+     */
+    private static final int FRAME_PAINT_CHANGES = 2;
+
+    /**
+     * Save, translate and restore around every arrow.
+     */
+    private static final int MATRIX_OPS_PER_SELECTED_CELL = 3;
+
+    /**
+     * The trail is rewound when the previous gesture is cleared and when the next one starts, afterwards it is only
+     * extended by one operation per selected cell.
+     */
+    private static final int TRAIL_REWINDS_PER_GESTURE = 2;
+
+    @Test
+    public void framesStayWithinBudget() throws Exception {
+        for (int baseCount = 3; baseCount <= 10; baseCount++) {
+            checkGrid(baseCount);
+        }
+    }
+
+    @Test
+    public void thresholdsRebuildTheIdleLayer() throws Exception {
+        final Context context = RuntimeEnvironment.application;
+        PatternView view = new PatternView(context);
+        PatternMetrics metrics = new PatternMetrics();
+        view.setMetrics(metrics);
+        // A color of its own, so the layers of the other tests' views are not shared.
+        view.setCellColor(0xff123456);
+        view.setCellBaseCount(4);
+        final int measureSpec = View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY);
+        view.measure(measureSpec, measureSpec);
+        view.layout(0, 0, SIZE, SIZE);
+        RecordingCanvas canvas = new RecordingCanvas();
+        drawFrame(view, canvas);
+
+        // The layers are keyed by whether the cells are batched, the layers left in the pool are evicted so the
+        // layer of the new mode has to be rendered.
+        view.setLodRadiusThreshold(SIZE);
+        PatternResourcePool.getDefault().evictUnused();
+        drawFrame(view, canvas);
+        assertTrue(metrics.getLastFrameDrawCalls() > IDLE_FRAME_DRAW_OPS);
+
+        view.setLodRadiusThreshold(0);
+        PatternResourcePool.getDefault().evictUnused();
+        drawFrame(view, canvas);
+        assertTrue(metrics.getLastFrameDrawCalls() > IDLE_FRAME_DRAW_OPS);
+
+        view.setLargeGridThreshold(4);
+        PatternResourcePool.getDefault().evictUnused();
+        drawFrame(view, canvas);
+        assertTrue(metrics.getLastFrameDrawCalls() > IDLE_FRAME_DRAW_OPS);
+    }
+
+    private void checkGrid(int baseCount) {
+        final Context context = RuntimeEnvironment.application;
+        final int cellCount = baseCount * baseCount;
+        PatternView view = new PatternView(context);
+        // The arrows are only drawn in setup mode and for the wrong patterns.
+        view.setIsSetup(true);
+        view.setOnPatternFinishListener(new PatternView.OnPatternFinishListener() {
+            @Override
+            public boolean onFinish(PatternView patternView, SelectedCells result) {
+                return false;
+            }
+        });
+        final int[] selectedCount = new int[1];
+        view.addOnPatternProgressListener(new PatternView.SimpleOnPatternProgressListener() {
+            @Override
+            public void onCellAdded(PatternView patternView, int index, int position) {
+                selectedCount[0] = position + 1;
+            }
+
+            @Override
+            public void onCleared(PatternView patternView) {
+                selectedCount[0] = 0;
+            }
+        });
+        PatternMetrics metrics = new PatternMetrics();
+        view.setMetrics(metrics);
+        view.setCellBaseCount(baseCount);
+        final int measureSpec = View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY);
+        view.measure(measureSpec, measureSpec);
+        view.layout(0, 0, SIZE, SIZE);
+
+        // The same layout as the view, with the default spacing.
+        PatternEngine engine = new PatternEngine(baseCount);
+        engine.setPreferredSpacing(PatternView.dip2px(context, 32));
+        engine.layout(SIZE, SIZE, 0);
+
+        RecordingCanvas canvas = new RecordingCanvas();
+        drawFrame(view, canvas);
+        assertEquals(baseCount + "x" + baseCount + " idle frame", IDLE_FRAME_DRAW_OPS, canvas.getDrawOpCount());
+        // The idle layer is rendered offscreen once, by a single path on the large grids. It is not rendered at all
+        // if an identical grid has left it in the pool.
+        assertTrue(metrics.getLastFrameDrawCalls() <= cellCount + IDLE_FRAME_DRAW_OPS);
+        if (baseCount >= PatternView.DEFAULT_LARGE_GRID_THRESHOLD) {
+            assertTrue(metrics.getLastFrameDrawCalls() <= 1 + IDLE_FRAME_DRAW_OPS);
+        }
+
+        // The arrows and the trail are built while the first gesture is drawn and reused by the next one.
+        final int[] pattern = snake(baseCount);
+        final PathCost first = drawGesture(view, engine, canvas, metrics, pattern, selectedCount);
+        final int directionCount = ((baseCount << 1) - 1) * ((baseCount << 1) - 1);
+        assertTrue(baseCount + "x" + baseCount + " built " + first.mNewPathCount + " paths",
+                first.mNewPathCount <= directionCount + 1);
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        final PathCost steady = drawGesture(view, engine, canvas, metrics, pattern, selectedCount);
+        assertEquals(cellCount, selectedCount[0]);
+        assertEquals(0, steady.mNewPathCount);
+        // Rewinding and rebuilding the same path objects every frame costs a rewind per frame and O(cells) per frame.
+        final String gesture = baseCount + "x" + baseCount + " steady gesture";
+        assertTrue(gesture + " rewound the paths " + steady.mRewindCount + " times",
+                steady.mRewindCount <= TRAIL_REWINDS_PER_GESTURE);
+        assertTrue(gesture + " changed the paths by " + steady.mOpCount + " operations",
+                steady.mOpCount <= cellCount + TRAIL_REWINDS_PER_GESTURE);
+
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        assertEquals(0, selectedCount[0]);
+        drawFrame(view, canvas);
+        assertEquals(IDLE_FRAME_DRAW_OPS, canvas.getDrawOpCount());
+    }
+
+    /**
+     * Swipe through the pattern and draw a frame after every touch event, the wrong pattern is drawn at last.
+     *
+     * @return what the frames of the gesture cost in paths.
+     */
+    private static PathCost drawGesture(PatternView view, PatternEngine engine, RecordingCanvas canvas,
+                                        PatternMetrics metrics, int[] pattern, int[] selectedCount) {
+        final PathCost cost = new PathCost();
+        final long downTime = SystemClock.uptimeMillis();
+        float x = engine.getCellCenterX(pattern[0]);
+        float y = engine.getCellCenterY(pattern[0]);
+        touch(view, downTime, MotionEvent.ACTION_DOWN, x, y);
+        drawAndCheckFrame(view, canvas, metrics, selectedCount[0], cost);
+        for (int i = 1; i < pattern.length; i++) {
+            final float toX = engine.getCellCenterX(pattern[i]);
+            final float toY = engine.getCellCenterY(pattern[i]);
+            for (int step = 1; step <= STEPS_PER_MOVE; step++) {
+                touch(view, downTime, MotionEvent.ACTION_MOVE, x + (toX - x) * step / STEPS_PER_MOVE,
+                        y + (toY - y) * step / STEPS_PER_MOVE);
+                drawAndCheckFrame(view, canvas, metrics, selectedCount[0], cost);
+            }
+            x = toX;
+            y = toY;
+        }
+        touch(view, downTime, MotionEvent.ACTION_UP, x, y);
+        drawAndCheckFrame(view, canvas, metrics, selectedCount[0], cost);
+        return cost;
+    }
+
+    /**
+     * Draw a frame, check it against the budget and add what its paths cost to the cost of the gesture.
+     */
+    private static void drawAndCheckFrame(PatternView view, RecordingCanvas canvas, PatternMetrics metrics,
+                                          int selectedCount, PathCost cost) {
+        drawFrame(view, canvas);
+        final String frame = "frame with " + selectedCount + " selected cells";
+        assertTrue(frame + " issued " + canvas.getDrawOpCount() + " draw ops",
+                canvas.getDrawOpCount() <= FRAME_DRAW_OPS + DRAW_OPS_PER_SELECTED_CELL * selectedCount);
+        assertTrue(frame + " changed the paint " + canvas.getPaintChangeCount() + " times",
+                canvas.getPaintChangeCount() <= FRAME_PAINT_CHANGES);
+        assertTrue(frame + " issued " + canvas.getMatrixOpCount() + " matrix ops",
+                canvas.getMatrixOpCount() <= MATRIX_OPS_PER_SELECTED_CELL * selectedCount);
+        assertTrue(frame + " built " + canvas.getNewPathCount() + " paths",
+                canvas.getNewPathCount() <= selectedCount + 1);
+        // Nothing is drawn offscreen once the idle layer is built.
+        assertEquals(canvas.getDrawOpCount(), metrics.getLastFrameDrawCalls());
+        cost.mNewPathCount += canvas.getNewPathCount();
+        cost.mOpCount += canvas.getPathOpCount();
+        cost.mRewindCount += canvas.getPathRewindCount();
+    }
+
+    private static void drawFrame(PatternView view, RecordingCanvas canvas) {
+        canvas.startFrame();
+        view.onDraw(canvas);
+    }
+
+    private static void touch(PatternView view, long downTime, int action, float x, float y) {
+        MotionEvent event = MotionEvent.obtain(downTime, SystemClock.uptimeMillis(), action, x, y, 0);
+        view.onTouchEvent(event);
+        event.recycle();
+    }
+
+    /**
+     * What the frames of a gesture cost in paths.
+     */
+    private static final class PathCost {
+        private int mNewPathCount;
+        private int mOpCount;
+        private int mRewindCount;
+    }
+
+    /**
+     * @return all the cells row by row, in alternating directions.
+     */
+    private static int[] snake(int baseCount) {
+        final int[] cells = new int[baseCount * baseCount];
+        for (int row = 0; row < baseCount; row++) {
+            for (int column = 0; column < baseCount; column++) {
+                cells[row * baseCount + column] =
+                        row * baseCount + ((row & 1) == 0 ? column : baseCount - 1 - column);
+            }
+        }
+        return cells;
+    }
+}
@@ -0,0 +1,212 @@
+package com.cc.library;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check how {@link PatternView} shows and applies the result of an {@link PatternView.OnAsyncFinishListener}.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class PatternViewVerificationTest {
+    private static final int SIZE = 600;
+
+    private final List<Runnable> mVerifications = new ArrayList<Runnable>();
+    private final Executor mExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            mVerifications.add(command);
+        }
+    };
+
+    @Test
+    public void pendingPatternIsTranslucent() throws Exception {
+        // Both the sprites of the small grids and the batched cells of the large ones.
+        for (int baseCount = 3; baseCount <= PatternView.DEFAULT_LARGE_GRID_THRESHOLD; baseCount += 5) {
+            PatternView view = newView(baseCount, true);
+            swipe(view, baseCount, 0, 1, 2);
+            assertTrue(view.isVerifying());
+
+            AlphaCanvas canvas = new AlphaCanvas();
+            view.onDraw(canvas);
+            assertTrue(canvas.mSelectedOpCount > 0);
+            assertTrue(canvas.mMaxSelectedAlpha <= PatternView.PENDING_ALPHA);
+
+            runVerifications();
+            assertFalse(view.isVerifying());
+            canvas = new AlphaCanvas();
+            view.onDraw(canvas);
+            assertTrue(canvas.mSelectedOpCount > 0);
+            assertEquals(0xff, canvas.mMaxSelectedAlpha);
+            ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        }
+    }
+
+    @Test
+    public void staleResultIsIgnored() throws Exception {
+        PatternView view = newView(3, false);
+        PatternMetrics metrics = new PatternMetrics();
+        view.setMetrics(metrics);
+        swipe(view, 3, 0, 1, 2);
+        assertTrue(view.isVerifying());
+        view.cancelVerification();
+        assertFalse(view.isVerifying());
+
+        // The next gesture is verified while the result of the cancelled one is still on its way.
+        swipe(view, 3, 6, 7, 8);
+        assertTrue(view.isVerifying());
+        final Runnable stale = mVerifications.remove(0);
+        stale.run();
+        ShadowLooper.runUiThreadTasks();
+        assertTrue(view.isVerifying());
+        assertEquals(0, metrics.getGestureCount());
+
+        runVerifications();
+        assertFalse(view.isVerifying());
+        assertEquals(1, metrics.getGestureCount());
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+    }
+
+    @Test
+    public void failingListenerReportsIncorrect() throws Exception {
+        PatternView view = newView(3, true);
+        PatternMetrics metrics = new PatternMetrics();
+        view.setMetrics(metrics);
+        view.setOnAsyncFinishListener(new PatternView.OnAsyncFinishListener() {
+            @Override
+            public void onFinish(PatternView patternView, SelectedCells result, PatternView.VerifyCallback callback) {
+                throw new IllegalStateException("The store is not available");
+            }
+        });
+        swipe(view, 3, 0, 1, 2);
+        assertTrue(view.isVerifying());
+        runVerifications();
+        assertFalse(view.isVerifying());
+        assertEquals(1, metrics.getGestureCount());
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+    }
+
+    @Test
+    public void rejectedVerificationReportsIncorrect() throws Exception {
+        PatternView view = newView(3, true);
+        view.setVerifyExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        });
+        swipe(view, 3, 0, 1, 2);
+        ShadowLooper.runUiThreadTasks();
+        assertFalse(view.isVerifying());
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+    }
+
+    private PatternView newView(int baseCount, final boolean isCorrect) {
+        final Context context = RuntimeEnvironment.application;
+        PatternView view = new PatternView(context);
+        view.setIsShowPath(false);
+        view.setCellColor(Color.WHITE);
+        view.setErrorColor(Color.RED);
+        view.setCellBaseCount(baseCount);
+        view.setVerifyExecutor(mExecutor);
+        view.setOnAsyncFinishListener(new PatternView.OnAsyncFinishListener() {
+            @Override
+            public void onFinish(PatternView patternView, SelectedCells result, PatternView.VerifyCallback callback) {
+                callback.onResult(isCorrect);
+            }
+        });
+        final int measureSpec = View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY);
+        view.measure(measureSpec, measureSpec);
+        view.layout(0, 0, SIZE, SIZE);
+        return view;
+    }
+
+    /**
+     * Run the pending verifications and deliver their results to the main thread.
+     */
+    private void runVerifications() {
+        final List<Runnable> verifications = new ArrayList<Runnable>(mVerifications);
+        mVerifications.clear();
+        for (Runnable verification : verifications) {
+            verification.run();
+        }
+        ShadowLooper.runUiThreadTasks();
+    }
+
+    private static void swipe(PatternView view, int baseCount, int... cells) {
+        PatternEngine engine = new PatternEngine(baseCount);
+        engine.setPreferredSpacing(PatternView.dip2px(RuntimeEnvironment.application, 32));
+        engine.layout(SIZE, SIZE, 0);
+        final long downTime = SystemClock.uptimeMillis();
+        for (int i = 0; i < cells.length; i++) {
+            final int action = i == 0 ? MotionEvent.ACTION_DOWN : MotionEvent.ACTION_MOVE;
+            touch(view, downTime, action, engine.getCellCenterX(cells[i]), engine.getCellCenterY(cells[i]));
+        }
+        final int last = cells[cells.length - 1];
+        touch(view, downTime, MotionEvent.ACTION_UP, engine.getCellCenterX(last), engine.getCellCenterY(last));
+    }
+
+    private static void touch(PatternView view, long downTime, int action, float x, float y) {
+        MotionEvent event = MotionEvent.obtain(downTime, SystemClock.uptimeMillis(), action, x, y, 0);
+        view.onTouchEvent(event);
+        event.recycle();
+    }
+
+    /**
+     * Record the largest alpha of the draw operations after the idle layer, i.e. of the selected cells.
+     */
+    private static class AlphaCanvas extends RecordingCanvas {
+        private boolean mIsIdleLayerDrawn;
+        private int mSelectedOpCount;
+        private int mMaxSelectedAlpha;
+
+        private void onSelectedOp(Paint paint) {
+            if (!mIsIdleLayerDrawn) {
+                mIsIdleLayerDrawn = true;
+                return;
+            }
+            mSelectedOpCount++;
+            mMaxSelectedAlpha = Math.max(mMaxSelectedAlpha, paint == null ? 0xff : paint.getAlpha());
+        }
+
+        @Override
+        public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+            onSelectedOp(paint);
+            super.drawBitmap(bitmap, left, top, paint);
+        }
+
+        @Override
+        public void drawPath(Path path, Paint paint) {
+            onSelectedOp(paint);
+            super.drawPath(path, paint);
+        }
+
+        @Override
+        public void drawPoints(float[] pts, int offset, int count, Paint paint) {
+            onSelectedOp(paint);
+            super.drawPoints(pts, offset, count, paint);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.cc.library;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import org.robolectric.Shadows;
+import org.robolectric.shadows.ShadowPath;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A {@link Canvas} that draws nothing but counts what a frame costs: the draw operations, the paint state changes
+ * between consecutive operations, the matrix operations, the paths that have never been drawn before and the
+ * operations that built or changed the drawn paths since they were drawn last. The operations are only counted with
+ * the {@link CountingShadowPath}, so a path that is rewound and rebuilt every frame is caught even though it is the
+ * same object.
+ */
+class RecordingCanvas extends Canvas {
+    private int mDrawOpCount;
+    private int mPaintChangeCount;
+    private int mMatrixOpCount;
+    private int mNewPathCount;
+    private int mPathOpCount;
+    private int mPathRewindCount;
+    private int mSaveCount;
+
+    private Paint mLastPaint;
+    private int mLastColor;
+    private Paint.Style mLastStyle;
+    private float mLastStrokeWidth;
+
+    /**
+     * The operation and rewind counts of every path that has been drawn, when it was drawn last.
+     */
+    private final Map<Path, int[]> mSeenPaths = new IdentityHashMap<Path, int[]>();
+
+    /**
+     * Clear the counters of the frame, the paths that have been seen are kept.
+     */
+    void startFrame() {
+        mDrawOpCount = 0;
+        mPaintChangeCount = 0;
+        mMatrixOpCount = 0;
+        mNewPathCount = 0;
+        mPathOpCount = 0;
+        mPathRewindCount = 0;
+        mLastPaint = null;
+    }
+
+    int getDrawOpCount() {
+        return mDrawOpCount;
+    }
+
+    int getPaintChangeCount() {
+        return mPaintChangeCount;
+    }
+
+    int getMatrixOpCount() {
+        return mMatrixOpCount;
+    }
+
+    int getNewPathCount() {
+        return mNewPathCount;
+    }
+
+    /**
+     * @return the count of the operations on the paths of the frame since they were drawn last, or since they were
+     * created for the new paths.
+     */
+    int getPathOpCount() {
+        return mPathOpCount;
+    }
+
+    /**
+     * @return the count of the rewinds of the paths of the frame since they were drawn last.
+     */
+    int getPathRewindCount() {
+        return mPathRewindCount;
+    }
+
+    private void onDrawOp(Paint paint) {
+        mDrawOpCount++;
+        // A bitmap drawn without a paint uses the default state.
+        if (paint == null) {
+            return;
+        }
+        if (paint != mLastPaint || paint.getColor() != mLastColor || paint.getStyle() != mLastStyle
+                || paint.getStrokeWidth() != mLastStrokeWidth) {
+            mPaintChangeCount++;
+            mLastPaint = paint;
+            mLastColor = paint.getColor();
+            mLastStyle = paint.getStyle();
+            mLastStrokeWidth = paint.getStrokeWidth();
+        }
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+        onDrawOp(paint);
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, Rect src, Rect dst, Paint paint) {
+        onDrawOp(paint);
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint) {
+        onDrawOp(paint);
+    }
+
+    @Override
+    public void drawPath(Path path, Paint paint) {
+        final ShadowPath shadow = Shadows.shadowOf(path);
+        final int opCount;
+        final int rewindCount;
+        if (shadow instanceof CountingShadowPath) {
+            opCount = ((CountingShadowPath) shadow).getOpCount();
+            rewindCount = ((CountingShadowPath) shadow).getRewindCount();
+        } else {
+            opCount = 0;
+            rewindCount = 0;
+        }
+
+        int[] seen = mSeenPaths.get(path);
+        if (seen == null) {
+            mNewPathCount++;
+            seen = new int[2];
+            mSeenPaths.put(path, seen);
+        }
+        mPathOpCount += opCount - seen[0];
+        mPathRewindCount += rewindCount - seen[1];
+        seen[0] = opCount;
+        seen[1] = rewindCount;
+        onDrawOp(paint);
+    }
+
+    @Override
+    public void drawLine(float startX, float startY, float stopX, float stopY, Paint paint) {
+        onDrawOp(paint);
+    }
+
+    @Override
+    public void drawLines(float[] pts, int offset, int count, Paint paint) {
+        onDrawOp(paint);
+    }
+
+    @Override
+    public void drawLines(float[] pts, Paint paint) {
+        onDrawOp(paint);
+    }
+
+    @Override
+    public void drawPoints(float[] pts, int offset, int count, Paint paint) {
+        onDrawOp(paint);
+    }
+
+    @Override
+    public void drawPoints(float[] pts, Paint paint) {
+        onDrawOp(paint);
+    }
+
+    @Override
+    public void drawCircle(float cx, float cy, float radius, Paint paint) {
+        onDrawOp(paint);
+    }
+
+    @Override
+    public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+        onDrawOp(paint);
+    }
+
+    @Override
+    public void drawRect(Rect r, Paint paint) {
+        onDrawOp(paint);
+    }
+
+    @Override
+    public void drawRect(RectF rect, Paint paint) {
+        onDrawOp(paint);
+    }
+
+    @Override
+    public void drawColor(int color) {
+        onDrawOp(null);
+    }
+
+    @Override
+    public void drawColor(int color, PorterDuff.Mode mode) {
+        onDrawOp(null);
+    }
+
+    @Override
+    public int save() {
+        mMatrixOpCount++;
+        return mSaveCount++;
+    }
+
+    @Override
+    public void restore() {
+        mMatrixOpCount++;
+        mSaveCount--;
+    }
+
+    @Override
+    public void translate(float dx, float dy) {
+        mMatrixOpCount++;
+    }
+
+    @Override
+    public void rotate(float degrees) {
+        mMatrixOpCount++;
+    }
+}